@@ -0,0 +1,160 @@
+package me.ialistannen.htmltodiscord.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import me.ialistannen.htmltodiscord.MapperCollection;
+import me.ialistannen.htmltodiscord.StandardMappers;
+
+/**
+ * The Javadoc style documents the benchmarks convert.
+ */
+public class Corpus {
+
+  /**
+   * The base url the documents are resolved against
+   */
+  public static final String BASE_URL = "https://docs.oracle.com/javase/8/docs/api/java/lang/";
+
+  /**
+   * Returns a document by its name.
+   * <ul>
+   * <li>{@code small}: The description of a single method</li>
+   * <li>{@code medium}: A class description with lists, code, a summary table and a method</li>
+   * <li>{@code table500}: A summary table with 500 rows</li>
+   * <li>{@code nestedList}: Lists nested 40 levels deep</li>
+   * <li>{@code wideParagraph}: A paragraph with 500 inline links</li>
+   * <li>{@code bigFirstBlock}: A block with 200000 elements, followed by 20000 paragraphs</li>
+   * </ul>
+   *
+   * @param name The name of the document
+   * @return The HTML of the document
+   */
+  public static String get(String name) {
+    switch (name) {
+      case "small":
+        return load("small");
+      case "medium":
+        return load("medium");
+      case "table500":
+        return table(500);
+      case "nestedList":
+        return nestedList(40);
+      case "wideParagraph":
+        return wideParagraph(500);
+      case "bigFirstBlock":
+        return bigFirstBlock(200_000, 20_000);
+      default:
+        throw new IllegalArgumentException("Unknown document '" + name + "'");
+    }
+  }
+
+  /**
+   * @return A collection with all {@link StandardMappers}
+   */
+  public static MapperCollection standardMappers() {
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMappers(StandardMappers.values());
+    return mappers;
+  }
+
+  /**
+   * Builds a method summary table.
+   *
+   * @param rows The amount of rows
+   * @return The HTML of the table
+   */
+  static String table(int rows) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("<table class=\"memberSummary\">\n")
+        .append("<caption><span>Methods</span></caption>\n")
+        .append("<tr><th class=\"colFirst\">Modifier and Type</th>")
+        .append("<th class=\"colLast\">Method and Description</th></tr>\n");
+
+    for (int i = 0; i < rows; i++) {
+      builder.append("<tr class=\"").append(i % 2 == 0 ? "altColor" : "rowColor").append("\">\n")
+          .append("<td class=\"colFirst\"><code>List&lt;String&gt;</code></td>\n")
+          .append("<td class=\"colLast\"><code><a href=\"List.html#method").append(i)
+          .append("-int-\">method").append(i).append("</a>(int&nbsp;index)</code>\n")
+          .append("<div class=\"block\">Returns the element at the specified position in this")
+          .append(" list.<br>Throws if the index is out of range.</div></td>\n")
+          .append("</tr>\n");
+    }
+
+    return builder.append("</table>").toString();
+  }
+
+  /**
+   * Builds lists nested into each other.
+   *
+   * @param depth The nesting depth
+   * @return The HTML of the lists
+   */
+  static String nestedList(int depth) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < depth; i++) {
+      builder.append(i % 2 == 0 ? "<ul>" : "<ol>")
+          .append("<li>Item <code>").append(i).append("</code> of the <b>outer</b> list</li>")
+          .append("<li>Level ").append(i);
+    }
+    for (int i = depth - 1; i >= 0; i--) {
+      builder.append("</li>").append(i % 2 == 0 ? "</ul>" : "</ol>");
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Builds a paragraph with many inline links, like a "See also" section.
+   *
+   * @param links The amount of links
+   * @return The HTML of the paragraph
+   */
+  static String wideParagraph(int links) {
+    StringBuilder builder = new StringBuilder("<p>See also:\n");
+    for (int i = 0; i < links; i++) {
+      builder.append("<code><a href=\"Type").append(i).append(".html\">Type").append(i)
+          .append("</a></code>,\n");
+    }
+    return builder.append("and more.</p>").toString();
+  }
+
+  /**
+   * Builds one huge top level block followed by many small ones, so the conversion state grows
+   * big once and is then reset after every small block.
+   *
+   * @param elements The amount of elements in the first block
+   * @param paragraphs The amount of paragraphs after it
+   * @return The HTML of the document
+   */
+  static String bigFirstBlock(int elements, int paragraphs) {
+    StringBuilder builder = new StringBuilder("<div>");
+    for (int i = 0; i < elements; i++) {
+      builder.append("<span>x</span>");
+    }
+    builder.append("</div>\n");
+    for (int i = 0; i < paragraphs; i++) {
+      builder.append("<p>Paragraph ").append(i).append("</p>\n");
+    }
+    return builder.toString();
+  }
+
+  private static String load(String name) {
+    String path = "/corpus/" + name + ".html";
+    try (InputStream stream = Corpus.class.getResourceAsStream(path)) {
+      if (stream == null) {
+        throw new IllegalArgumentException("Corpus file '" + path + "' not found");
+      }
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = stream.read(buffer)) != -1) {
+        output.write(buffer, 0, read);
+      }
+      return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package me.ialistannen.htmltodiscord.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import me.ialistannen.htmltodiscord.ConversionLimits;
+import me.ialistannen.htmltodiscord.SharedHtmlConverter;
+import me.ialistannen.htmltodiscord.StandardFrontEnds;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The {@link StandardFrontEnds} on the {@link Corpus}, on their own and followed by a conversion.
+ * <p>
+ * The corpus is HTML, not XHTML, so {@link StandardFrontEnds#XML_FRAGMENT} builds a different
+ * tree for it. Its numbers only show the cost of the parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrontEndBenchmark {
+
+  @Param({"small", "medium", "table500"})
+  private String document;
+
+  @Param({"WRAPPED_DOCUMENT", "BODY_FRAGMENT", "XML_FRAGMENT"})
+  private StandardFrontEnds frontEnd;
+
+  private String html;
+  private SharedHtmlConverter converter;
+
+  @Setup
+  public void setup() {
+    html = Corpus.get(document);
+    converter = new SharedHtmlConverter(
+        Corpus.standardMappers().freeze(), true, null, ConversionLimits.NONE, frontEnd
+    );
+  }
+
+  @Benchmark
+  public Element parseBody() {
+    return frontEnd.parseBody(html, Corpus.BASE_URL);
+  }
+
+  @Benchmark
+  public String convert() {
+    return converter.convert(html, Corpus.BASE_URL);
+  }
+}
@@ -0,0 +1,63 @@
+package me.ialistannen.htmltodiscord.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import me.ialistannen.htmltodiscord.ContextMetadata;
+import me.ialistannen.htmltodiscord.ConverterStorage;
+import me.ialistannen.htmltodiscord.MapperCollection;
+import me.ialistannen.htmltodiscord.WrappedElement;
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link MapperCollection#getMapper(WrappedElement)} for every element of a document.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapperDispatchBenchmark {
+
+  @Param({"medium", "table500"})
+  private String document;
+
+  private MapperCollection mappers;
+  private List<WrappedElement> elements;
+
+  @Setup
+  public void setup() {
+    mappers = Corpus.standardMappers();
+
+    ConverterStorage storage = new ConverterStorage();
+    ContextMetadata metadata = new ContextMetadata();
+
+    elements = Jsoup.parse("<root>" + Corpus.get(document) + "</root>", Corpus.BASE_URL)
+        .body()
+        .child(0)
+        .getAllElements()
+        .stream()
+        .map(element -> new WrappedElement(element, storage, mappers, metadata, true))
+        .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public void getMapper(Blackhole blackhole) {
+    for (WrappedElement element : elements) {
+      blackhole.consume(mappers.getMapper(element));
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package me.ialistannen.htmltodiscord.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import me.ialistannen.htmltodiscord.ConversionEngine;
+import me.ialistannen.htmltodiscord.HtmlConverter;
+import me.ialistannen.htmltodiscord.MapperCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end {@link HtmlConverter#parse(String)} on the {@link Corpus}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+  @Param({"small", "medium", "table500", "nestedList"})
+  private String document;
+
+  @Param({"REGEX_SPLICE", "TREE_WALK"})
+  private ConversionEngine engine;
+
+  private String html;
+  private MapperCollection mappers;
+
+  @Setup
+  public void setup() {
+    html = Corpus.get(document);
+    mappers = Corpus.standardMappers();
+  }
+
+  @Benchmark
+  public String parse() {
+    return new HtmlConverter(html, mappers)
+        .setEngine(engine)
+        .parse(Corpus.BASE_URL);
+  }
+}
@@ -0,0 +1,68 @@
+package me.ialistannen.htmltodiscord.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import me.ialistannen.htmltodiscord.ContextMetadata;
+import me.ialistannen.htmltodiscord.ConverterStorage;
+import me.ialistannen.htmltodiscord.MapperCollection;
+import me.ialistannen.htmltodiscord.WrappedElement;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link WrappedElement#getReplacedContent()} for every element of a parsed document, bottom up.
+ * <p>
+ * Parsing is done once in the setup, so this only measures the splicing and the mappers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReplacedContentBenchmark {
+
+  @Param({"small", "medium", "table500", "nestedList", "wideParagraph"})
+  private String document;
+
+  private List<WrappedElement> bottomUp;
+
+  @Setup
+  public void setup() {
+    MapperCollection mappers = Corpus.standardMappers();
+    ConverterStorage storage = new ConverterStorage();
+    ContextMetadata metadata = new ContextMetadata();
+
+    Element root = Jsoup.parse("<root>" + Corpus.get(document) + "</root>", Corpus.BASE_URL)
+        .body()
+        .child(0);
+
+    bottomUp = new ArrayList<>();
+    for (Element element : root.getAllElements()) {
+      bottomUp.add(new WrappedElement(element, storage, mappers, metadata, true));
+    }
+    // getAllElements is in document order, so the reverse has all children before the parent
+    Collections.reverse(bottomUp);
+  }
+
+  @Benchmark
+  public void getReplacedContent(Blackhole blackhole) {
+    for (WrappedElement element : bottomUp) {
+      blackhole.consume(element.getReplacedContent());
+    }
+  }
+}
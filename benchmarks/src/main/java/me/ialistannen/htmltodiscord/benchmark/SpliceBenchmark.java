@@ -0,0 +1,124 @@
+package me.ialistannen.htmltodiscord.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import me.ialistannen.htmltodiscord.ContextMetadata;
+import me.ialistannen.htmltodiscord.ConverterStorage;
+import me.ialistannen.htmltodiscord.MapperCollection;
+import me.ialistannen.htmltodiscord.StandardMappers;
+import me.ialistannen.htmltodiscord.WrappedElement;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Splicing the markdown of 500 children into a paragraph and matching headings, compared with
+ * the regex based implementations they replaced.
+ * <p>
+ * The regex versions compile a pattern per child (or per match) and are kept here only as a
+ * baseline. Run with the GC profiler to see the allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpliceBenchmark {
+
+  private static final String[] TAGS = {"h1", "h3", "p", "code", "h4", "div", "h9", "a"};
+
+  private WrappedElement paragraph;
+  private Map<Element, String> replacements = new IdentityHashMap<>();
+
+  @Setup
+  public void setup() {
+    MapperCollection mappers = Corpus.standardMappers();
+    ConverterStorage storage = new ConverterStorage();
+    ContextMetadata metadata = new ContextMetadata();
+
+    Element element = Jsoup.parse(Corpus.get("wideParagraph"), Corpus.BASE_URL)
+        .body()
+        .child(0);
+
+    // the descendants are converted once, only the paragraph is measured
+    List<Element> bottomUp = new ArrayList<>(element.getAllElements());
+    Collections.reverse(bottomUp);
+    for (Element descendant : bottomUp) {
+      if (descendant != element) {
+        replacements.put(
+            descendant,
+            new WrappedElement(descendant, storage, mappers, metadata, true).getReplacedContent()
+        );
+      }
+    }
+    paragraph = new WrappedElement(element, storage, mappers, metadata, true);
+  }
+
+  @Benchmark
+  public String splice() {
+    return paragraph.getReplacedContent();
+  }
+
+  @Benchmark
+  public String regexSpliceBaseline() {
+    Element wrapped = paragraph.getWrapped();
+    String html = wrapped.html().replaceAll("(\n|\r\n|\r)\\s*<", "<");
+
+    for (int i = 0; i < wrapped.children().size(); i++) {
+      Element child = wrapped.child(i);
+
+      Matcher matcher = Pattern.compile(
+          Pattern.quote(child.outerHtml().replaceAll("(\n|\r\n|\r)\\s*<", "<"))
+      ).matcher(html);
+
+      if (matcher.find()) {
+        String replacement = replacements.get(child);
+        if (matcher.end() < html.length() - 1
+            && !Character.isWhitespace(html.codePointAt(matcher.end()))) {
+          replacement += " ";
+        }
+        html = matcher.replaceFirst(replacement.replace("\\)", "\\\\)"));
+      }
+    }
+
+    return html;
+  }
+
+  @Benchmark
+  public int headingMatches() {
+    int matches = 0;
+    for (String tag : TAGS) {
+      if (StandardMappers.HEADING.matches(tag)) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+
+  @Benchmark
+  public int headingRegexBaseline() {
+    int matches = 0;
+    for (String tag : TAGS) {
+      if (tag.matches("h[0-4]")) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+}
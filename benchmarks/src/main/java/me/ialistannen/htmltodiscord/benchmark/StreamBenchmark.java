@@ -0,0 +1,53 @@
+package me.ialistannen.htmltodiscord.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import me.ialistannen.htmltodiscord.SharedHtmlConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Converting a whole document against streaming it block by block. Streaming resets the
+ * conversion state after every top level block, which must stay cheap after a big block.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamBenchmark {
+
+  @Param({"medium", "table500", "bigFirstBlock"})
+  private String document;
+
+  private String html;
+  private SharedHtmlConverter converter;
+
+  @Setup
+  public void setup() {
+    html = Corpus.get(document);
+    converter = new SharedHtmlConverter(Corpus.standardMappers().freeze(), true);
+  }
+
+  @Benchmark
+  public String convert() {
+    return converter.convert(html, Corpus.BASE_URL);
+  }
+
+  @Benchmark
+  public StringBuilder stream() throws IOException {
+    StringBuilder markdown = new StringBuilder();
+    converter.convert(html, Corpus.BASE_URL, markdown);
+    return markdown;
+  }
+}
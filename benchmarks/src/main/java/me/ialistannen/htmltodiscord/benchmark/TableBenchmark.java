@@ -0,0 +1,82 @@
+package me.ialistannen.htmltodiscord.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import me.ialistannen.htmltodiscord.util.Table;
+import me.ialistannen.htmltodiscord.util.TableCreator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Layout and printing of a {@link TableCreator} table, from narrow to wide and short to tall.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TableBenchmark {
+
+  private static final String DESCRIPTION = "Returns the element at the specified position in"
+      + " this list.\nThrows if the index is out of range.";
+
+  @Param({"10", "500"})
+  private int rows;
+
+  @Param({"2", "6", "20"})
+  private int columns;
+
+  private TableCreator filled;
+
+  @Setup
+  public void setup() {
+    filled = fill(new TableCreator(() -> " | ", 55));
+  }
+
+  @Benchmark
+  public String buildAndPrint() {
+    return fill(new TableCreator(() -> " | ", 55)).build().print();
+  }
+
+  /**
+   * Measures the cells, solves the column widths and wraps the cells, without printing.
+   */
+  @Benchmark
+  public Table layout() {
+    return filled.build();
+  }
+
+  private TableCreator fill(TableCreator tableCreator) {
+    TableCreator.Column[] header = new TableCreator.Column[columns];
+    for (int column = 0; column < columns; column++) {
+      int index = column;
+      header[column] = () -> "Column " + index;
+    }
+    tableCreator.addLine(length -> repeat('=', length), header);
+
+    for (int row = 0; row < rows; row++) {
+      TableCreator.Column[] cells = new TableCreator.Column[columns];
+      for (int column = 0; column < columns; column++) {
+        int index = row;
+        cells[column] = column == 0 ? () -> "method" + index + "(int)" : () -> DESCRIPTION;
+      }
+      tableCreator.addLine(length -> repeat('-', length), cells);
+    }
+    return tableCreator;
+  }
+
+  private static String repeat(char character, int length) {
+    char[] chars = new char[length];
+    java.util.Arrays.fill(chars, character);
+    return new String(chars);
+  }
+}
@@ -0,0 +1,162 @@
+package me.ialistannen.htmltodiscord;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Converts many documents at once, in parallel.
+ * <p>
+ * All documents are converted by the same {@link SharedHtmlConverter} and therefore share its
+ * frozen {@link MapperCollection}. The conversions run on an {@link Executor}, by default the
+ * {@link ForkJoinPool#commonPool() common pool}.
+ */
+public class BatchConverter {
+
+  private final SharedHtmlConverter converter;
+  private final Executor executor;
+
+  /**
+   * Creates a batch converter that uses the {@link ForkJoinPool#commonPool() common pool}.
+   *
+   * @param converter The {@link SharedHtmlConverter} to convert the documents with
+   */
+  public BatchConverter(SharedHtmlConverter converter) {
+    this(converter, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * @param converter The {@link SharedHtmlConverter} to convert the documents with
+   * @param executor The {@link Executor} to run the conversions on, e.g. a {@link ForkJoinPool}
+   */
+  public BatchConverter(SharedHtmlConverter converter, Executor executor) {
+    this.converter = Objects.requireNonNull(converter, "converter can not be null!");
+    this.executor = Objects.requireNonNull(executor, "executor can not be null!");
+  }
+
+  /**
+   * Converts all documents in parallel and waits until all are done.
+   * <p>
+   * A document that fails to convert does not affect the others, its {@link Result} contains the
+   * error instead.
+   *
+   * @param sources The documents to convert
+   * @return The results, in the same order as the sources
+   */
+  public List<Result> convertAll(Collection<Source> sources) {
+    List<CompletableFuture<Result>> futures = new ArrayList<>(sources.size());
+    for (Source source : sources) {
+      futures.add(CompletableFuture.supplyAsync(() -> convert(source), executor));
+    }
+
+    List<Result> results = new ArrayList<>(futures.size());
+    for (CompletableFuture<Result> future : futures) {
+      results.add(future.join());
+    }
+    return results;
+  }
+
+  /**
+   * @param source The document to convert
+   * @return The result of the conversion
+   */
+  private Result convert(Source source) {
+    try {
+      return new Result(source, converter.convert(source.getHtml(), source.getBaseUrl()), null);
+    } catch (RuntimeException e) {
+      return new Result(source, null, e);
+    }
+  }
+
+  /**
+   * @return The {@link SharedHtmlConverter} the documents are converted with
+   */
+  public SharedHtmlConverter getConverter() {
+    return converter;
+  }
+
+  /**
+   * A document to convert
+   */
+  public static class Source {
+
+    private final String html;
+    private final String baseUrl;
+
+    /**
+     * @param html The HTML code to convert
+     * @param baseUrl The base url of the website. Used to resolve Links
+     */
+    public Source(String html, String baseUrl) {
+      this.html = Objects.requireNonNull(html, "html can not be null!");
+      this.baseUrl = Objects.requireNonNull(baseUrl, "baseUrl can not be null!");
+    }
+
+    /**
+     * @return The HTML code to convert
+     */
+    public String getHtml() {
+      return html;
+    }
+
+    /**
+     * @return The base url of the website
+     */
+    public String getBaseUrl() {
+      return baseUrl;
+    }
+  }
+
+  /**
+   * The result of converting a single document. Either the markdown or the error is present.
+   */
+  public static class Result {
+
+    private final Source source;
+    private final String markdown;
+    private final RuntimeException error;
+
+    /**
+     * @param source The converted document
+     * @param markdown The markdown or null if the conversion failed
+     * @param error The error or null if the conversion succeeded
+     */
+    private Result(Source source, String markdown, RuntimeException error) {
+      this.source = source;
+      this.markdown = markdown;
+      this.error = error;
+    }
+
+    /**
+     * @return The document this is the result for
+     */
+    public Source getSource() {
+      return source;
+    }
+
+    /**
+     * @return True if the document was converted
+     */
+    public boolean isSuccess() {
+      return error == null;
+    }
+
+    /**
+     * @return The converted markdown or null if the conversion failed
+     */
+    public String getMarkdown() {
+      return markdown;
+    }
+
+    /**
+     * @return The error the conversion failed with or null if it succeeded
+     */
+    public RuntimeException getError() {
+      return error;
+    }
+  }
+}
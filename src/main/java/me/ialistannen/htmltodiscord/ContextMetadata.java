@@ -1,15 +1,44 @@
 package me.ialistannen.htmltodiscord;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import org.jsoup.nodes.Element;
 
 /**
  * Some metadata
+ * <p>
+ * The metadata maps are kept in an array indexed by the id the {@link ElementIndex} assigned to
+ * the element, so a lookup never hashes the element.
  */
 public class ContextMetadata {
 
-  private Map<Element, Map<String, Object>> metadata = new HashMap<>();
+  private static final int INITIAL_CAPACITY = 32;
+  /**
+   * The amount of elements whose metadata array is kept by {@link #clear()}
+   */
+  private static final int RETAINED_CAPACITY = 1 << 13;
+
+  private ElementIndex index;
+  private Object[] metadata = new Object[INITIAL_CAPACITY];
+  /**
+   * One more than the highest id with metadata
+   */
+  private int used;
+
+  /**
+   * Creates a metadata store with its own {@link ElementIndex}.
+   */
+  public ContextMetadata() {
+    this(new ElementIndex());
+  }
+
+  /**
+   * @param index The {@link ElementIndex} to use for the elements
+   */
+  ContextMetadata(ElementIndex index) {
+    this.index = index;
+  }
 
   /**
    * Returns the MetaData for a given Key
@@ -21,11 +50,12 @@ public class ContextMetadata {
    * @return The metadata or null if none
    */
   public <T> T getMetadata(String key, Element element) {
-    if (!metadata.containsKey(element)) {
+    Map<String, Object> map = getMap(index.getId(element));
+    if (map == null) {
       return null;
     }
     @SuppressWarnings("unchecked")
-    T result = (T) metadata.get(element).get(key);
+    T result = (T) map.get(key);
     return result;
   }
 
@@ -37,13 +67,17 @@ public class ContextMetadata {
    * @param value The value to save
    */
   public void setMetadata(String key, Element element, Object value) {
-    if (metadata.containsKey(element)) {
-      metadata.get(element).put(key, value);
-      return;
+    int id = index.register(element);
+    Map<String, Object> map = getMap(id);
+    if (map == null) {
+      map = new HashMap<>();
+      if (id >= metadata.length) {
+        metadata = Arrays.copyOf(metadata, Math.max(id + 1, metadata.length * 2));
+      }
+      metadata[id] = map;
+      used = Math.max(used, id + 1);
     }
-    Map<String, Object> map = new HashMap<>();
     map.put(key, value);
-    metadata.put(element, map);
   }
 
   /**
@@ -54,6 +88,32 @@ public class ContextMetadata {
    * @return True if it has a value for the given key
    */
   public boolean hasMetadata(String key, Element element) {
-    return metadata.containsKey(element) && metadata.get(element).containsKey(key);
+    Map<String, Object> map = getMap(index.getId(element));
+    return map != null && map.containsKey(key);
+  }
+
+  /**
+   * Removes all metadata. The {@link ElementIndex} is cleared by its owner.
+   */
+  void clear() {
+    if (metadata.length > RETAINED_CAPACITY) {
+      metadata = new Object[INITIAL_CAPACITY];
+    } else {
+      Arrays.fill(metadata, 0, used, null);
+    }
+    used = 0;
+  }
+
+  /**
+   * @param id The id of the element
+   * @return The metadata map of the element or null if it has none
+   */
+  private Map<String, Object> getMap(int id) {
+    if (id < 0 || id >= metadata.length) {
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    Map<String, Object> map = (Map<String, Object>) metadata[id];
+    return map;
   }
 }
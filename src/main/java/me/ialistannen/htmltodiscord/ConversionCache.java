@@ -0,0 +1,198 @@
+package me.ialistannen.htmltodiscord;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A cache for converted documents.
+ * <p>
+ * The markdown is cached by a SHA-256 digest of the HTML and the base url and by the settings of
+ * the converter: the identity of its {@link MapperCollection} and {@link FrontEnd}, its {@link
+ * ConversionLimits} and whether it ignores unknown tags. So one cache can be shared by many
+ * converters. A hit returns the markdown without parsing anything.
+ * <p>
+ * The cache is bounded by the amount of markdown characters it retains. The HTML is not kept, only
+ * its digest. If the cache is full, the least recently used entries are evicted.
+ * <p>
+ * This class is thread safe. Conversions happen outside of any lock, so two threads may convert
+ * the same document at once.
+ */
+public class ConversionCache {
+
+  private final long maxRetainedChars;
+  private final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long retainedChars;
+
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * @param maxRetainedChars The maximum amount of characters to retain
+   * @throws IllegalArgumentException if the maximum is negative
+   */
+  public ConversionCache(long maxRetainedChars) {
+    if (maxRetainedChars < 0) {
+      throw new IllegalArgumentException("maxRetainedChars must be >= 0");
+    }
+    this.maxRetainedChars = maxRetainedChars;
+  }
+
+  /**
+   * Returns the cached markdown for the document or converts and caches it.
+   *
+   * @param converter The {@link SharedHtmlConverter} to convert the document with
+   * @param html The HTML code to convert
+   * @param baseUrl The base url of the website. Used to resolve Links
+   * @return The converted markdown
+   */
+  public String convert(SharedHtmlConverter converter, String html, String baseUrl) {
+    Key key = new Key(html, baseUrl, converter);
+
+    synchronized (this) {
+      String cached = entries.get(key);
+      if (cached != null) {
+        hitCount++;
+        return cached;
+      }
+      missCount++;
+    }
+
+    String markdown = converter.convert(html, baseUrl);
+    put(key, markdown);
+    return markdown;
+  }
+
+  /**
+   * Stores the markdown and evicts the least recently used entries until the cache fits again.
+   *
+   * @param key The key of the document
+   * @param markdown The converted markdown
+   */
+  private synchronized void put(Key key, String markdown) {
+    long size = markdown.length();
+    if (size > maxRetainedChars) {
+      return;
+    }
+
+    String previous = entries.put(key, markdown);
+    if (previous != null) {
+      retainedChars -= previous.length();
+    }
+    retainedChars += size;
+
+    Iterator<Map.Entry<Key, String>> iterator = entries.entrySet().iterator();
+    while (retainedChars > maxRetainedChars && iterator.hasNext()) {
+      Map.Entry<Key, String> eldest = iterator.next();
+      retainedChars -= eldest.getValue().length();
+      iterator.remove();
+      evictionCount++;
+    }
+  }
+
+  /**
+   * Removes all entries. The counters are kept.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    retainedChars = 0;
+  }
+
+  /**
+   * @return The amount of cached documents
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return The amount of characters currently retained
+   */
+  public synchronized long getRetainedChars() {
+    return retainedChars;
+  }
+
+  /**
+   * @return The maximum amount of characters to retain
+   */
+  public long getMaxRetainedChars() {
+    return maxRetainedChars;
+  }
+
+  /**
+   * @return The amount of conversions answered from the cache
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return The amount of conversions that were not cached
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * @return The amount of entries that were evicted to make room for others
+   */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * The key of a cached document. The HTML and the base url are only kept as a digest, so a
+   * cached entry does not keep its source document alive.
+   */
+  private static class Key {
+
+    private final FragmentCache.Fingerprint digest;
+    private final MapperCollection mappers;
+    private final FrontEnd frontEnd;
+    private final ConversionLimits limits;
+    private final int hash;
+
+    /**
+     * @param html The HTML code
+     * @param baseUrl The base url
+     * @param converter The {@link SharedHtmlConverter}. Its mappers and front end are compared
+     * by identity.
+     */
+    private Key(String html, String baseUrl, SharedHtmlConverter converter) {
+      Objects.requireNonNull(html, "html can not be null!");
+      Objects.requireNonNull(baseUrl, "baseUrl can not be null!");
+      this.digest = PersistentConversionStore.hash(converter, html, baseUrl);
+      this.mappers = converter.getMappers();
+      this.frontEnd = converter.getFrontEnd();
+      this.limits = converter.getLimits();
+
+      int hash = digest.hashCode();
+      hash = 31 * hash + System.identityHashCode(mappers);
+      hash = 31 * hash + System.identityHashCode(frontEnd);
+      this.hash = 31 * hash + limits.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return hash == key.hash
+          && mappers == key.mappers
+          && frontEnd == key.frontEnd
+          && limits.equals(key.limits)
+          && digest.equals(key.digest);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+}
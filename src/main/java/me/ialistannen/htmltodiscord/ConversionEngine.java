@@ -0,0 +1,26 @@
+package me.ialistannen.htmltodiscord;
+
+/**
+ * The strategies the {@link HtmlConverter} can use to assemble the markdown of an element from
+ * the markdown of its children.
+ */
+public enum ConversionEngine {
+
+  /**
+   * Serializes every element back to HTML and splices the markdown of each child into it, where
+   * the HTML of the child is found.
+   * <p>
+   * This is the original engine. Every level re-serializes its whole subtree and the finished
+   * markdown is unescaped once more at the end.
+   */
+  REGEX_SPLICE,
+
+  /**
+   * Walks the text and element nodes once and appends the markdown of the children straight into
+   * a shared builder, without serializing anything back to HTML.
+   * <p>
+   * Text is taken decoded from the text nodes and never escaped or unescaped again. Produces the
+   * same output as {@link #REGEX_SPLICE}.
+   */
+  TREE_WALK
+}
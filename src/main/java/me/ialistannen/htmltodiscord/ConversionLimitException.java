@@ -0,0 +1,57 @@
+package me.ialistannen.htmltodiscord;
+
+/**
+ * Thrown if a document exceeds the {@link ConversionLimits} of a converter.
+ */
+public class ConversionLimitException extends IllegalArgumentException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Limit limit;
+  private final int maximum;
+
+  /**
+   * @param limit The limit that was exceeded
+   * @param maximum The maximum of the limit
+   */
+  public ConversionLimitException(Limit limit, int maximum) {
+    super("The document exceeds the maximum " + limit.getDescription() + " of " + maximum);
+    this.limit = limit;
+    this.maximum = maximum;
+  }
+
+  /**
+   * @return The limit that was exceeded
+   */
+  public Limit getLimit() {
+    return limit;
+  }
+
+  /**
+   * @return The maximum of the exceeded limit
+   */
+  public int getMaximum() {
+    return maximum;
+  }
+
+  /**
+   * A limit of the {@link ConversionLimits}
+   */
+  public enum Limit {
+    ELEMENTS("amount of elements"),
+    DEPTH("nesting depth");
+
+    private String description;
+
+    Limit(String description) {
+      this.description = description;
+    }
+
+    /**
+     * @return A description of the limit
+     */
+    public String getDescription() {
+      return description;
+    }
+  }
+}
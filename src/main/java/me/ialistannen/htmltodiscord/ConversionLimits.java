@@ -0,0 +1,86 @@
+package me.ialistannen.htmltodiscord;
+
+/**
+ * Limits for the size of the documents a converter accepts, to protect it from huge or hostile
+ * input.
+ * <p>
+ * Documents that exceed a limit are rejected with a {@link ConversionLimitException} as soon as
+ * the limit is reached.
+ */
+public class ConversionLimits {
+
+  /**
+   * No limits at all
+   */
+  public static final ConversionLimits NONE = new ConversionLimits(
+      Integer.MAX_VALUE, Integer.MAX_VALUE
+  );
+
+  private final int maxElements;
+  private final int maxDepth;
+
+  /**
+   * @param maxElements The maximum amount of elements in a document, including its {@code <root>}
+   * @param maxDepth The maximum nesting depth of elements. The {@code <root>} element every
+   * {@link FrontEnd} wraps the document in has a depth of 1 and counts as an element, so the top
+   * level elements of the document have a depth of 2.
+   * @throws IllegalArgumentException if a limit is smaller than 1
+   */
+  public ConversionLimits(int maxElements, int maxDepth) {
+    if (maxElements < 1) {
+      throw new IllegalArgumentException("maxElements must be > 0");
+    }
+    if (maxDepth < 1) {
+      throw new IllegalArgumentException("maxDepth must be > 0");
+    }
+    this.maxElements = maxElements;
+    this.maxDepth = maxDepth;
+  }
+
+  /**
+   * @return The maximum amount of elements in a document
+   */
+  public int getMaxElements() {
+    return maxElements;
+  }
+
+  /**
+   * @return The maximum nesting depth of elements
+   */
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ConversionLimits)) {
+      return false;
+    }
+    ConversionLimits that = (ConversionLimits) o;
+    return maxElements == that.maxElements && maxDepth == that.maxDepth;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * maxElements + maxDepth;
+  }
+
+  /**
+   * Checks an element against the limits.
+   *
+   * @param elementCount The amount of elements up to and including this one
+   * @param depth The depth of the element
+   * @throws ConversionLimitException if a limit is exceeded
+   */
+  void check(int elementCount, int depth) {
+    if (elementCount > maxElements) {
+      throw new ConversionLimitException(ConversionLimitException.Limit.ELEMENTS, maxElements);
+    }
+    if (depth > maxDepth) {
+      throw new ConversionLimitException(ConversionLimitException.Limit.DEPTH, maxDepth);
+    }
+  }
+}
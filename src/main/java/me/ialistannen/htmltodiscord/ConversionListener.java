@@ -0,0 +1,64 @@
+package me.ialistannen.htmltodiscord;
+
+/**
+ * Receives timings and counters of conversions, e.g. to bridge them to a metrics library.
+ * <p>
+ * A listener set on a {@link MapperCollection} is told about every {@link Mapper} lookup and
+ * invocation, the table layout and the phases of every {@link SharedHtmlConverter} using the
+ * collection. A listener set on a {@link HtmlConverter} is told about the phases of its
+ * conversion. The same listener can be set on both.
+ * <p>
+ * Listeners may be called from multiple threads at once, if the collection is shared. Without a
+ * listener, nothing is measured.
+ *
+ * @see ConversionStatistics
+ */
+public interface ConversionListener {
+
+  /**
+   * Called after a mapper converted an element.
+   *
+   * @param mapper The {@link Mapper} that was invoked
+   * @param nanos The time the mapper took, in nanoseconds
+   * @param outputChars The length of the converted content
+   */
+  default void onMapperInvoked(Mapper mapper, long nanos, int outputChars) {
+  }
+
+  /**
+   * Called after a phase of the conversion is done.
+   *
+   * @param phase The {@link Phase}
+   * @param nanos The time the phase took, in nanoseconds
+   */
+  default void onPhase(Phase phase, long nanos) {
+  }
+
+  /**
+   * A phase of the conversion
+   */
+  enum Phase {
+    /**
+     * Parsing the HTML with jsoup
+     */
+    PARSE,
+    /**
+     * Flattening the element tree. Part of {@link #CONVERT} for the {@link
+     * ConversionEngine#TREE_WALK} engine.
+     */
+    FLATTEN,
+    /**
+     * Finding the mapper of a single element. Reported once per element by the {@link
+     * MapperCollection} and part of {@link #CONVERT}.
+     */
+    DISPATCH,
+    /**
+     * Converting all elements with their mappers, including finding the mappers
+     */
+    CONVERT,
+    /**
+     * Laying out and printing a table. Part of the time of the table mapper.
+     */
+    TABLE_LAYOUT
+  }
+}
@@ -0,0 +1,100 @@
+package me.ialistannen.htmltodiscord;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ConversionListener} that sums up the counters per {@link Mapper} and the time per
+ * {@link ConversionListener.Phase}. Thread safe.
+ */
+public class ConversionStatistics implements ConversionListener {
+
+  private final Map<Mapper, MapperStatistics> mappers = new ConcurrentHashMap<>();
+  private final Map<Phase, LongAdder> phases = new EnumMap<>(Phase.class);
+
+  /**
+   * Creates empty statistics
+   */
+  public ConversionStatistics() {
+    for (Phase phase : Phase.values()) {
+      phases.put(phase, new LongAdder());
+    }
+  }
+
+  @Override
+  public void onMapperInvoked(Mapper mapper, long nanos, int outputChars) {
+    MapperStatistics statistics = mappers.computeIfAbsent(mapper, key -> new MapperStatistics());
+    statistics.invocations.increment();
+    statistics.nanos.add(nanos);
+    statistics.outputChars.add(outputChars);
+  }
+
+  @Override
+  public void onPhase(Phase phase, long nanos) {
+    phases.get(phase).add(nanos);
+  }
+
+  /**
+   * @return All mappers that were invoked at least once
+   */
+  public Set<Mapper> getMappers() {
+    return Collections.unmodifiableSet(mappers.keySet());
+  }
+
+  /**
+   * @param mapper The {@link Mapper}
+   * @return The amount of elements the mapper converted
+   */
+  public long getInvocationCount(Mapper mapper) {
+    MapperStatistics statistics = mappers.get(mapper);
+    return statistics == null ? 0 : statistics.invocations.sum();
+  }
+
+  /**
+   * @param mapper The {@link Mapper}
+   * @return The total time the mapper took, in nanoseconds
+   */
+  public long getNanos(Mapper mapper) {
+    MapperStatistics statistics = mappers.get(mapper);
+    return statistics == null ? 0 : statistics.nanos.sum();
+  }
+
+  /**
+   * @param mapper The {@link Mapper}
+   * @return The total length of the content the mapper produced
+   */
+  public long getOutputChars(Mapper mapper) {
+    MapperStatistics statistics = mappers.get(mapper);
+    return statistics == null ? 0 : statistics.outputChars.sum();
+  }
+
+  /**
+   * @param phase The {@link Phase}
+   * @return The total time spent in the phase, in nanoseconds
+   */
+  public long getNanos(Phase phase) {
+    return phases.get(phase).sum();
+  }
+
+  /**
+   * Resets all counters.
+   */
+  public void reset() {
+    mappers.clear();
+    phases.values().forEach(LongAdder::reset);
+  }
+
+  /**
+   * The counters of a single mapper
+   */
+  private static class MapperStatistics {
+
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder outputChars = new LongAdder();
+  }
+}
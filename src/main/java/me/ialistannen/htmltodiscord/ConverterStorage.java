@@ -1,22 +1,56 @@
 package me.ialistannen.htmltodiscord;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import org.jsoup.nodes.Element;
 
 /**
  * Saves the converted Strings
+ * <p>
+ * The replacements are kept in an array indexed by the id the {@link ElementIndex} assigned to
+ * the element, so a lookup never hashes the element. The same goes for the {@link SubtreeFlags}.
  */
 public class ConverterStorage {
 
-  private Map<Element, String> replacementMap = new HashMap<>();
+  /**
+   * Marks the flags of an element as computed
+   */
+  private static final int FLAGS_KNOWN = 1 << 31;
+
+  private ElementIndex index;
+  private String[] replacements = new String[32];
+  private int[] subtreeFlags = new int[32];
+
+  /**
+   * Creates a storage with its own {@link ElementIndex}.
+   */
+  public ConverterStorage() {
+    this(new ElementIndex());
+  }
+
+  /**
+   * @param index The {@link ElementIndex} to use for the elements
+   */
+  ConverterStorage(ElementIndex index) {
+    this.index = index;
+  }
 
   /**
    * @param element The {@link Element} the replacement is for
    * @param replacement The replacement for it
    */
   void setReplacement(Element element, String replacement) {
-    replacementMap.put(element, replacement);
+    setReplacement(index.register(element), replacement);
+  }
+
+  /**
+   * @param id The id of the element the replacement is for
+   * @param replacement The replacement for it
+   */
+  void setReplacement(int id, String replacement) {
+    if (id >= replacements.length) {
+      replacements = Arrays.copyOf(replacements, Math.max(id + 1, replacements.length * 2));
+    }
+    replacements[id] = replacement;
   }
 
   /**
@@ -24,6 +58,72 @@ public class ConverterStorage {
    * @return The replacement for the element or an empty String if none
    */
   String getReplacement(Element element) {
-    return replacementMap.get(element) == null ? "" : replacementMap.get(element);
+    return getReplacement(index.getId(element));
+  }
+
+  /**
+   * @param id The id of the element to get the replacement for
+   * @return The replacement for the element or an empty String if none
+   */
+  String getReplacement(int id) {
+    if (id < 0 || id >= replacements.length || replacements[id] == null) {
+      return "";
+    }
+    return replacements[id];
+  }
+
+  /**
+   * @param id The id of the element
+   * @param flags The {@link SubtreeFlags} of the element
+   */
+  void setSubtreeFlags(int id, int flags) {
+    if (id >= subtreeFlags.length) {
+      subtreeFlags = Arrays.copyOf(subtreeFlags, Math.max(id + 1, subtreeFlags.length * 2));
+    }
+    subtreeFlags[id] = flags | FLAGS_KNOWN;
+  }
+
+  /**
+   * @param id The id of the element
+   * @return The {@link SubtreeFlags} of the element or -1 if they were not computed
+   */
+  int getSubtreeFlags(int id) {
+    if (id < 0 || id >= subtreeFlags.length || subtreeFlags[id] == 0) {
+      return -1;
+    }
+    return subtreeFlags[id] & ~FLAGS_KNOWN;
+  }
+
+  /**
+   * @param element The element
+   * @return The {@link SubtreeFlags} of the element, scanning its subtree if they were not
+   * computed
+   */
+  int getSubtreeFlags(Element element) {
+    int flags = getSubtreeFlags(index.getId(element));
+    return flags < 0 ? SubtreeFlags.scan(element) : flags;
+  }
+
+  /**
+   * @return The amount of elements the arrays of this storage can hold without growing
+   */
+  int getCapacity() {
+    return Math.max(replacements.length, subtreeFlags.length);
+  }
+
+  /**
+   * @return The {@link ElementIndex} the elements are registered in
+   */
+  ElementIndex getIndex() {
+    return index;
+  }
+
+  /**
+   * Removes all replacements and forgets the elements, so the storage can be reused.
+   */
+  void clear() {
+    Arrays.fill(replacements, 0, Math.min(index.size(), replacements.length), null);
+    Arrays.fill(subtreeFlags, 0, Math.min(index.size(), subtreeFlags.length), 0);
+    index.clear();
   }
 }
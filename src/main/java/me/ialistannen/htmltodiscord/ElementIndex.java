@@ -0,0 +1,162 @@
+package me.ialistannen.htmltodiscord;
+
+import java.util.Arrays;
+import org.jsoup.nodes.Element;
+
+/**
+ * Assigns every element of one conversion a dense int id.
+ * <p>
+ * Elements are compared by identity. The hash code of a jsoup {@link Element} walks up all of its
+ * ancestors and two structurally equal elements share it, so it is never used here.
+ */
+class ElementIndex {
+
+  private static final int INITIAL_CAPACITY = 32;
+  /**
+   * The amount of elements whose arrays are kept by {@link #clear()}. Bigger arrays are dropped,
+   * so one huge document does not keep them (and their clearing cost) around forever.
+   */
+  private static final int RETAINED_CAPACITY = 1 << 13;
+
+  private Element[] keys;
+  private int[] ids;
+  private Element[] elements;
+  /**
+   * The slot in {@link #keys} of every element, by id
+   */
+  private int[] slots;
+  private int size;
+
+  /**
+   * Creates an empty index.
+   */
+  ElementIndex() {
+    allocate();
+  }
+
+  /**
+   * Registers an element, if it is not already known.
+   *
+   * @param element The {@link Element} to register
+   * @return The id of the element
+   */
+  int register(Element element) {
+    int slot = findSlot(element);
+    if (keys[slot] == element) {
+      return ids[slot];
+    }
+
+    if (size == elements.length) {
+      elements = Arrays.copyOf(elements, size * 2);
+      slots = Arrays.copyOf(slots, size * 2);
+    }
+    elements[size] = element;
+    slots[size] = slot;
+    keys[slot] = element;
+    ids[slot] = size;
+    size++;
+
+    // keep the load factor below one half
+    if (size * 2 > keys.length) {
+      rehash(keys.length * 2);
+    }
+
+    return size - 1;
+  }
+
+  /**
+   * @param element The {@link Element} to get the id for
+   * @return The id of the element or -1 if it was never registered
+   */
+  int getId(Element element) {
+    int slot = findSlot(element);
+    return keys[slot] == element ? ids[slot] : -1;
+  }
+
+  /**
+   * @param id The id of the element
+   * @return The element with the given id
+   */
+  Element getElement(int id) {
+    return elements[id];
+  }
+
+  /**
+   * @return The amount of registered elements. All ids are smaller than this.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Forgets all elements, so the index can be reused for another conversion. Only the slots that
+   * were used are cleared, so this takes time proportional to the amount of elements.
+   */
+  void clear() {
+    if (elements.length > RETAINED_CAPACITY) {
+      allocate();
+    } else {
+      for (int id = 0; id < size; id++) {
+        keys[slots[id]] = null;
+        elements[id] = null;
+      }
+    }
+    size = 0;
+  }
+
+  /**
+   * Replaces all arrays with new ones of the initial capacity.
+   */
+  private void allocate() {
+    keys = new Element[INITIAL_CAPACITY * 2];
+    ids = new int[INITIAL_CAPACITY * 2];
+    elements = new Element[INITIAL_CAPACITY];
+    slots = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Finds the slot the element is in, or the free slot it would be put in.
+   *
+   * @param element The element to look for
+   * @return The slot
+   */
+  private int findSlot(Element element) {
+    int mask = keys.length - 1;
+    int slot = mix(System.identityHashCode(element)) & mask;
+    while (keys[slot] != null && keys[slot] != element) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * @param newCapacity The new capacity. Must be a power of two.
+   */
+  private void rehash(int newCapacity) {
+    Element[] oldKeys = keys;
+    int[] oldIds = ids;
+
+    keys = new Element[newCapacity];
+    ids = new int[newCapacity];
+
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        int slot = findSlot(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        ids[slot] = oldIds[i];
+        slots[oldIds[i]] = slot;
+      }
+    }
+  }
+
+  /**
+   * Spreads the bits of the identity hash code, as consecutive objects tend to get similar ones.
+   *
+   * @param hash The hash to mix
+   * @return The mixed hash
+   */
+  private static int mix(int hash) {
+    int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -0,0 +1,129 @@
+package me.ialistannen.htmltodiscord;
+
+import java.util.Arrays;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+
+/**
+ * The element tree of a document, flattened into arrays.
+ * <p>
+ * Every element gets an index in breadth first order, the root has index 0. The structure is kept
+ * in {@code int} arrays (parent, first child and next sibling), so walking it needs neither
+ * recursion nor a wrapper object per element.
+ */
+class ElementTree {
+
+  private static final int NONE = -1;
+
+  private Element[] elements;
+  private int[] parents;
+  private int[] firstChildren;
+  private int[] nextSiblings;
+  private int[] depths;
+  private int size;
+
+  /**
+   * Flattens the element and all of its descendants.
+   *
+   * @param root The root element. It is not checked against the limits.
+   * @param limits The {@link ConversionLimits} for the descendants
+   * @throws ConversionLimitException if the descendants exceed a limit
+   */
+  ElementTree(Element root, ConversionLimits limits) {
+    elements = new Element[16];
+    parents = new int[16];
+    firstChildren = new int[16];
+    nextSiblings = new int[16];
+    depths = new int[16];
+
+    add(root, NONE, 0);
+
+    for (int current = 0; current < size; current++) {
+      Element element = elements[current];
+      int previous = NONE;
+
+      for (int i = 0; i < element.childNodeSize(); i++) {
+        Node child = element.childNode(i);
+        if (!(child instanceof Element)) {
+          continue;
+        }
+        int depth = depths[current] + 1;
+        // the root itself is not counted
+        limits.check(size, depth);
+
+        int index = add((Element) child, current, depth);
+        if (previous == NONE) {
+          firstChildren[current] = index;
+        } else {
+          nextSiblings[previous] = index;
+        }
+        previous = index;
+      }
+    }
+  }
+
+  private int add(Element element, int parent, int depth) {
+    if (size == elements.length) {
+      int capacity = size * 2;
+      elements = Arrays.copyOf(elements, capacity);
+      parents = Arrays.copyOf(parents, capacity);
+      firstChildren = Arrays.copyOf(firstChildren, capacity);
+      nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+      depths = Arrays.copyOf(depths, capacity);
+    }
+    elements[size] = element;
+    parents[size] = parent;
+    firstChildren[size] = NONE;
+    nextSiblings[size] = NONE;
+    depths[size] = depth;
+    return size++;
+  }
+
+  /**
+   * Returns the indices of all elements in post order, so every element comes after all of its
+   * children. The root is last.
+   *
+   * @return The indices of all elements in post order
+   */
+  int[] postOrder() {
+    int[] order = new int[size];
+    int count = 0;
+
+    int node = leftmostLeaf(0);
+    while (true) {
+      order[count++] = node;
+      if (node == 0) {
+        break;
+      }
+      if (nextSiblings[node] != NONE) {
+        node = leftmostLeaf(nextSiblings[node]);
+      } else {
+        node = parents[node];
+      }
+    }
+
+    return order;
+  }
+
+  private int leftmostLeaf(int node) {
+    while (firstChildren[node] != NONE) {
+      node = firstChildren[node];
+    }
+    return node;
+  }
+
+  /**
+   * @param index The index of the element
+   * @return The element
+   */
+  Element getElement(int index) {
+    return elements[index];
+  }
+
+  /**
+   * @return The amount of elements, including the root
+   */
+  int size() {
+    return size;
+  }
+}
@@ -0,0 +1,239 @@
+package me.ialistannen.htmltodiscord;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A cache for the converted markdown of repeated element subtrees, like the same link or
+ * "Throws:" block on many pages.
+ * <p>
+ * Subtrees are identified by a 128 bit fingerprint of their tag, attributes, children, the tag of
+ * their parent, their base url and whether unknown tags are silently ignored. If the fingerprint
+ * of an element is known, its cached markdown is used and the element and its descendants are not
+ * converted at all.
+ * <p>
+ * This is only correct if the mappers depend on nothing else, which is true for the {@link
+ * StandardMappers}. Mappers that use the {@link ContextMetadata} or look further up the tree must
+ * not be used with a fragment cache.
+ * <p>
+ * The cache is bounded by the amount of characters it retains. Once it is full, it is cleared
+ * and starts over. It is thread safe and can be shared by many converters using the same
+ * {@link MapperCollection}. The cache is bound to the first collection it is used with, and
+ * converters with any other collection are rejected.
+ */
+public class FragmentCache {
+
+  private final long maxRetainedChars;
+  private final ConcurrentHashMap<Fingerprint, Fragment> fragments = new ConcurrentHashMap<>();
+  private final AtomicLong retainedChars = new AtomicLong();
+  private final AtomicReference<MapperCollection> mappers = new AtomicReference<>();
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * @param maxRetainedChars The maximum amount of markdown characters to retain
+   * @throws IllegalArgumentException if the maximum is negative
+   */
+  public FragmentCache(long maxRetainedChars) {
+    if (maxRetainedChars < 0) {
+      throw new IllegalArgumentException("maxRetainedChars must be >= 0");
+    }
+    this.maxRetainedChars = maxRetainedChars;
+  }
+
+  /**
+   * @param maxRetainedChars The maximum amount of markdown characters to retain
+   * @param mappers The only {@link MapperCollection} this cache may be used with
+   * @throws IllegalArgumentException if the maximum is negative
+   */
+  public FragmentCache(long maxRetainedChars, MapperCollection mappers) {
+    this(maxRetainedChars);
+    bind(mappers);
+  }
+
+  /**
+   * Binds this cache to the {@link MapperCollection}, if it is not bound yet.
+   *
+   * @param mappers The {@link MapperCollection} of a converter that uses this cache
+   * @throws IllegalArgumentException if the cache is bound to a different collection
+   */
+  void bind(MapperCollection mappers) {
+    Objects.requireNonNull(mappers, "mappers can not be null!");
+    if (!this.mappers.compareAndSet(null, mappers) && this.mappers.get() != mappers) {
+      throw new IllegalArgumentException(
+          "The FragmentCache is already used with a different MapperCollection."
+      );
+    }
+  }
+
+  /**
+   * @return The {@link MapperCollection} this cache is bound to or null if it was never used
+   */
+  public MapperCollection getMappers() {
+    return mappers.get();
+  }
+
+  /**
+   * @param high The upper half of the fingerprint
+   * @param low The lower half of the fingerprint
+   * @return The cached fragment or null if it is unknown
+   */
+  Fragment get(long high, long low) {
+    Fragment fragment = fragments.get(new Fingerprint(high, low));
+    if (fragment == null) {
+      missCount.incrementAndGet();
+    } else {
+      hitCount.incrementAndGet();
+    }
+    return fragment;
+  }
+
+  /**
+   * @param high The upper half of the fingerprint
+   * @param low The lower half of the fingerprint
+   * @param markdown The converted markdown of the fragment
+   * @param subtreeFlags The {@link SubtreeFlags} of the fragment
+   */
+  void put(long high, long low, String markdown, int subtreeFlags) {
+    if (markdown.length() > maxRetainedChars) {
+      return;
+    }
+    Fragment fragment = new Fragment(markdown, subtreeFlags);
+    if (fragments.putIfAbsent(new Fingerprint(high, low), fragment) != null) {
+      return;
+    }
+    if (retainedChars.addAndGet(markdown.length()) > maxRetainedChars) {
+      clear();
+    }
+  }
+
+  /**
+   * Removes all fragments. The counters are kept.
+   */
+  public void clear() {
+    int size = fragments.size();
+    fragments.clear();
+    retainedChars.set(0);
+    evictionCount.addAndGet(size);
+  }
+
+  /**
+   * @return The amount of cached fragments
+   */
+  public int size() {
+    return fragments.size();
+  }
+
+  /**
+   * @return The amount of markdown characters currently retained
+   */
+  public long getRetainedChars() {
+    return retainedChars.get();
+  }
+
+  /**
+   * @return The amount of elements whose markdown was found in the cache
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return The amount of elements whose markdown was not cached
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return The amount of fragments that were evicted
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * The cached conversion of a fragment
+   */
+  static class Fragment {
+
+    private final String markdown;
+    private final int subtreeFlags;
+
+    /**
+     * @param markdown The converted markdown
+     * @param subtreeFlags The {@link SubtreeFlags} of the fragment
+     */
+    private Fragment(String markdown, int subtreeFlags) {
+      this.markdown = markdown;
+      this.subtreeFlags = subtreeFlags;
+    }
+
+    /**
+     * @return The converted markdown
+     */
+    String getMarkdown() {
+      return markdown;
+    }
+
+    /**
+     * @return The {@link SubtreeFlags} of the fragment
+     */
+    int getSubtreeFlags() {
+      return subtreeFlags;
+    }
+  }
+
+  /**
+   * The fingerprint of a fragment
+   */
+  static class Fingerprint {
+
+    private final long high;
+    private final long low;
+
+    /**
+     * @param high The upper half
+     * @param low The lower half
+     */
+    Fingerprint(long high, long low) {
+      this.high = high;
+      this.low = low;
+    }
+
+    /**
+     * @return The upper half
+     */
+    long getHigh() {
+      return high;
+    }
+
+    /**
+     * @return The lower half
+     */
+    long getLow() {
+      return low;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Fingerprint)) {
+        return false;
+      }
+      Fingerprint that = (Fingerprint) o;
+      return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (low ^ (low >>> 32));
+    }
+  }
+}
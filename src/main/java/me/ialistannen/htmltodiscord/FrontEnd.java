@@ -0,0 +1,34 @@
+package me.ialistannen.htmltodiscord;
+
+import org.jsoup.nodes.Element;
+
+/**
+ * Parses the HTML for a converter.
+ *
+ * @see StandardFrontEnds
+ */
+public interface FrontEnd {
+
+  /**
+   * Parses the HTML into a body.
+   * <p>
+   * The last child element of the body is the root of the conversion. It should be a {@code
+   * <root>} element, so it is mapped by {@link StandardMappers#ROOT}, and contain the parsed HTML.
+   * Any other children of the body are converted as well, but their markdown is dropped.
+   *
+   * @param html The HTML code to parse
+   * @param baseUrl The base url of the website. Used to resolve Links
+   * @return The body
+   */
+  Element parseBody(String html, String baseUrl);
+
+  /**
+   * Returns a name that identifies this front end, also across restarts. Persisted conversions
+   * are keyed by it, so two front ends that parse differently must not share a name.
+   *
+   * @return The name of this front end. Defaults to the name of its class.
+   */
+  default String getName() {
+    return getClass().getName();
+  }
+}
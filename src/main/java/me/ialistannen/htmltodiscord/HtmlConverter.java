@@ -1,13 +1,8 @@
 package me.ialistannen.htmltodiscord;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.Stack;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
+import java.util.Objects;
+import me.ialistannen.htmltodiscord.util.MessageChunker;
 import org.jsoup.nodes.Element;
 import org.jsoup.parser.Parser;
 
@@ -21,6 +16,11 @@ public class HtmlConverter {
   private ConverterStorage converterStorage;
   private ContextMetadata metadata;
   private boolean silentlyIgnoreUnknownTags;
+  private ConversionEngine engine = ConversionEngine.REGEX_SPLICE;
+  private FragmentCache fragmentCache;
+  private ConversionListener listener;
+  private ConversionLimits limits = ConversionLimits.NONE;
+  private FrontEnd frontEnd = StandardFrontEnds.WRAPPED_DOCUMENT;
 
   /**
    * Creates a new HTML to Markdown converter
@@ -29,11 +29,12 @@ public class HtmlConverter {
    * @param mappers The {@link Mapper}s to use for converting HTML tags to markdown
    */
   public HtmlConverter(String htmlCode, MapperCollection mappers) {
-    this.htmlCode = "<root>" + htmlCode + "</root>";
+    this.htmlCode = htmlCode;
     this.mappers = mappers;
 
-    converterStorage = new ConverterStorage();
-    metadata = new ContextMetadata();
+    ElementIndex index = new ElementIndex();
+    converterStorage = new ConverterStorage(index);
+    metadata = new ContextMetadata(index);
   }
 
   /**
@@ -43,50 +44,75 @@ public class HtmlConverter {
    * @return The parsed String
    */
   public String parse(String baseUrl) {
-    Document document = Jsoup.parse(htmlCode, baseUrl);
+    long start = startPhase();
+    Element body = frontEnd.parseBody(htmlCode, baseUrl);
+    endPhase(ConversionListener.Phase.PARSE, start);
 
-    Element html = document.child(0);
+    if (engine == ConversionEngine.TREE_WALK) {
+      TreeWalker walker = new TreeWalker(
+          converterStorage, mappers, metadata, silentlyIgnoreUnknownTags
+      );
+      walker.setFragmentCache(fragmentCache);
+      walker.setLimits(limits);
+
+      start = startPhase();
+      String result = walker.convertBody(body);
+      endPhase(ConversionListener.Phase.CONVERT, start);
 
-    List<WrappedElement> flatten = flatten(html.child(1));
-    Collections.reverse(flatten);
+      // the text was taken decoded from the text nodes
+      return result;
+    }
 
-    // convert it from the bottom up...
-    flatten.forEach(WrappedElement::getReplacedContent);
+    start = startPhase();
+    ElementTree tree = new ElementTree(body, limits);
+    int[] bottomUp = tree.postOrder();
+    endPhase(ConversionListener.Phase.FLATTEN, start);
+
+    // convert it from the bottom up, the body itself is last and not converted
+    start = startPhase();
+    for (int i = 0; i < bottomUp.length - 1; i++) {
+      new WrappedElement(
+          tree.getElement(bottomUp[i]), converterStorage, mappers, metadata,
+          silentlyIgnoreUnknownTags
+      ).getReplacedContent();
+    }
+    endPhase(ConversionListener.Phase.CONVERT, start);
 
-    WrappedElement last = flatten.get(flatten.size() - 1);
+    Element last = tree.getElement(bottomUp[bottomUp.length - 2]);
 
-    return Parser.unescapeEntities(converterStorage.getReplacement(last.getWrapped()), true);
+    // the splice works on serialized, escaped HTML
+    return Parser.unescapeEntities(converterStorage.getReplacement(last), true);
   }
 
   /**
-   * Breath First Search (in order traversal) to flatten the tree
+   * Parses the HTML and splits the result into chunks that fit in a Discord message.
    *
-   * @param input The tree root
-   * @return The flattened tree
+   * @param baseUrl The base url of the website. Used to resolve Links
+   * @param budget The maximum length of a chunk, e.g. {@link MessageChunker#MESSAGE_LIMIT}
+   * @return The parsed String, split into chunks
+   * @see MessageChunker
    */
-  private List<WrappedElement> flatten(Element input) {
-    Stack<Element> inputQueue = new Stack<>();
-    Queue<WrappedElement> outputQueue = new LinkedList<>();
-
-    inputQueue.add(input);
-
-    while (!inputQueue.isEmpty()) {
-      Element element = inputQueue.pop();
+  public List<String> parseChunked(String baseUrl, int budget) {
+    return MessageChunker.chunk(parse(baseUrl), budget);
+  }
 
-      outputQueue.add(
-          new WrappedElement(
-              element, converterStorage, mappers, metadata, silentlyIgnoreUnknownTags
-          )
-      );
+  /**
+   * @return The start time of a phase or 0 if there is no listener
+   */
+  private long startPhase() {
+    return listener == null ? 0 : System.nanoTime();
+  }
 
-      for (int i = 0; i < element.children().size(); i++) {
-        inputQueue.push(element.child(i));
-      }
+  /**
+   * Tells the listener about a finished phase, if there is one.
+   *
+   * @param phase The phase
+   * @param start The start time returned by {@link #startPhase()}
+   */
+  private void endPhase(ConversionListener.Phase phase, long start) {
+    if (listener != null) {
+      listener.onPhase(phase, System.nanoTime() - start);
     }
-
-    outputQueue.poll();
-
-    return new ArrayList<>(outputQueue);
   }
 
   /**
@@ -99,4 +125,68 @@ public class HtmlConverter {
     silentlyIgnoreUnknownTags = ignore;
     return this;
   }
+
+  /**
+   * Sets the engine used to assemble the markdown. Defaults to {@link
+   * ConversionEngine#REGEX_SPLICE}.
+   *
+   * @param engine The {@link ConversionEngine} to use
+   * @return This {@link HtmlConverter}
+   */
+  public HtmlConverter setEngine(ConversionEngine engine) {
+    this.engine = engine;
+    return this;
+  }
+
+  /**
+   * Sets the listener that is told about the phases of the conversion. Set it on the {@link
+   * MapperCollection} as well to measure the lookup and invocation of the single mappers.
+   *
+   * @param listener The {@link ConversionListener} or null to measure nothing
+   * @return This {@link HtmlConverter}
+   */
+  public HtmlConverter setListener(ConversionListener listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  /**
+   * Sets the limits for the size of the document. Defaults to {@link ConversionLimits#NONE}.
+   *
+   * @param limits The {@link ConversionLimits} to use
+   * @return This {@link HtmlConverter}
+   */
+  public HtmlConverter setLimits(ConversionLimits limits) {
+    this.limits = Objects.requireNonNull(limits, "limits can not be null!");
+    return this;
+  }
+
+  /**
+   * Sets the front end used to parse the HTML. Defaults to {@link
+   * StandardFrontEnds#WRAPPED_DOCUMENT}.
+   *
+   * @param frontEnd The {@link FrontEnd} to use
+   * @return This {@link HtmlConverter}
+   */
+  public HtmlConverter setFrontEnd(FrontEnd frontEnd) {
+    this.frontEnd = Objects.requireNonNull(frontEnd, "frontEnd can not be null!");
+    return this;
+  }
+
+  /**
+   * Sets the cache used to reuse the markdown of repeated subtrees. Only used by the {@link
+   * ConversionEngine#TREE_WALK} engine.
+   *
+   * @param fragmentCache The {@link FragmentCache} to use or null to convert every element
+   * @return This {@link HtmlConverter}
+   * @throws IllegalArgumentException if the cache is used with a different {@link
+   * MapperCollection}
+   */
+  public HtmlConverter setFragmentCache(FragmentCache fragmentCache) {
+    if (fragmentCache != null) {
+      fragmentCache.bind(mappers);
+    }
+    this.fragmentCache = fragmentCache;
+    return this;
+  }
 }
@@ -0,0 +1,320 @@
+package me.ialistannen.htmltodiscord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import me.ialistannen.htmltodiscord.util.MessageChunker;
+import org.jsoup.nodes.Element;
+
+/**
+ * Converts successive versions of the same document, reusing what did not change.
+ * <p>
+ * The markdown of every top level block (every child element of the root) is remembered together
+ * with a fingerprint of the block. When the next version is converted, blocks with a known
+ * fingerprint are not converted again, only the changed blocks and the root itself are. The
+ * markdown is then split into chunks and compared to the chunks of the previous version, so only
+ * the Discord messages whose chunk changed need to be edited.
+ * <p>
+ * The output is the same as {@link SharedHtmlConverter#convert(String, String, Appendable)} of a
+ * converter with the same mappers, {@link ConversionLimits} and {@link FrontEnd}. Like
+ * with a {@link FragmentCache}, reusing blocks is only correct if the mappers depend on nothing but
+ * the block and the tag of its parent, which is true for the {@link StandardMappers}.
+ * <p>
+ * This class is <em>not</em> thread safe. Use one instance per document.
+ */
+public class IncrementalConverter {
+
+  private MapperCollection mappers;
+  private boolean silentlyIgnoreUnknownTags;
+  private int budget;
+  private ConversionLimits limits;
+  private FrontEnd frontEnd;
+
+  private TreeWalker walker;
+  private ElementIndex index = new ElementIndex();
+  private SubtreeFingerprints fingerprints;
+
+  private Map<FragmentCache.Fingerprint, String> previousBlocks = new HashMap<>();
+  private Map<FragmentCache.Fingerprint, String> currentBlocks = new HashMap<>();
+  private FragmentCache.Fingerprint lastFingerprint;
+  private List<String> previousChunks = Collections.emptyList();
+  private int reusedBlocks;
+  private int convertedBlocks;
+
+  /**
+   * Creates a converter that fails on unknown tags and splits the markdown into chunks that fit
+   * in a Discord message.
+   *
+   * @param mappers The {@link Mapper}s to use. Must be {@link MapperCollection#freeze() frozen}.
+   * @throws IllegalArgumentException if the collection is not frozen
+   */
+  public IncrementalConverter(MapperCollection mappers) {
+    this(mappers, false, MessageChunker.MESSAGE_LIMIT);
+  }
+
+  /**
+   * @param mappers The {@link Mapper}s to use. Must be {@link MapperCollection#freeze() frozen},
+   * as the markdown of a block is only reusable if they do not change.
+   * @param silentlyIgnoreUnknownTags Whether to silently ignore unknown tags
+   * @param budget The maximum length of a chunk, e.g. {@link MessageChunker#MESSAGE_LIMIT}
+   * @throws IllegalArgumentException if the collection is not frozen or the budget is smaller
+   * than {@link MessageChunker#MINIMUM_BUDGET}
+   */
+  public IncrementalConverter(MapperCollection mappers, boolean silentlyIgnoreUnknownTags,
+      int budget) {
+    this(
+        mappers, silentlyIgnoreUnknownTags, budget, ConversionLimits.NONE,
+        StandardFrontEnds.WRAPPED_DOCUMENT
+    );
+  }
+
+  /**
+   * @param mappers The {@link Mapper}s to use. Must be {@link MapperCollection#freeze() frozen},
+   * as the markdown of a block is only reusable if they do not change.
+   * @param silentlyIgnoreUnknownTags Whether to silently ignore unknown tags
+   * @param budget The maximum length of a chunk, e.g. {@link MessageChunker#MESSAGE_LIMIT}
+   * @param limits The {@link ConversionLimits} for every version of the document
+   * @param frontEnd The {@link FrontEnd} to parse the HTML with
+   * @throws IllegalArgumentException if the collection is not frozen or the budget is smaller
+   * than {@link MessageChunker#MINIMUM_BUDGET}
+   */
+  public IncrementalConverter(MapperCollection mappers, boolean silentlyIgnoreUnknownTags,
+      int budget, ConversionLimits limits, FrontEnd frontEnd) {
+    if (!mappers.isFrozen()) {
+      throw new IllegalArgumentException("The MapperCollection must be frozen to reuse blocks.");
+    }
+    if (budget < MessageChunker.MINIMUM_BUDGET) {
+      throw new IllegalArgumentException(
+          "budget must be >= " + MessageChunker.MINIMUM_BUDGET + " but was " + budget
+      );
+    }
+    this.mappers = mappers;
+    this.silentlyIgnoreUnknownTags = silentlyIgnoreUnknownTags;
+    this.budget = budget;
+    this.limits = Objects.requireNonNull(limits, "limits can not be null!");
+    this.frontEnd = Objects.requireNonNull(frontEnd, "frontEnd can not be null!");
+
+    this.fingerprints = new SubtreeFingerprints(silentlyIgnoreUnknownTags);
+    this.walker = new TreeWalker(mappers, silentlyIgnoreUnknownTags);
+    this.walker.setLimits(limits);
+    this.walker.setBlockStore(new TreeWalker.BlockStore() {
+      @Override
+      public String get(Element block) {
+        return reuseBlock(block);
+      }
+
+      @Override
+      public void put(Element block, String markdown) {
+        // always called right after get for the same block
+        convertedBlocks++;
+        currentBlocks.put(lastFingerprint, markdown);
+      }
+    });
+  }
+
+  /**
+   * Converts the next version of the document.
+   * <p>
+   * Only the blocks of the previous version are remembered, so a block that was removed and comes
+   * back later is converted again.
+   *
+   * @param html The HTML code to convert
+   * @param baseUrl The base url of the website. Used to resolve Links
+   * @return The {@link Update} with the markdown and the chunks that changed
+   * @throws ConversionLimitException if the document exceeds the limits
+   */
+  public Update update(String html, String baseUrl) {
+    Element body = frontEnd.parseBody(html, baseUrl);
+
+    reusedBlocks = 0;
+    convertedBlocks = 0;
+    currentBlocks.clear();
+
+    StringBuilder markdown = new StringBuilder();
+    try {
+      walker.streamBody(body, markdown);
+    } catch (IOException e) {
+      // a StringBuilder never throws
+      throw new UncheckedIOException(e);
+    } finally {
+      walker.reset();
+      index.clear();
+    }
+
+    Map<FragmentCache.Fingerprint, String> swap = previousBlocks;
+    previousBlocks = currentBlocks;
+    currentBlocks = swap;
+    currentBlocks.clear();
+
+    List<String> chunks = MessageChunker.chunk(markdown.toString(), budget);
+    List<Integer> changedChunks = new ArrayList<>();
+    for (int i = 0; i < chunks.size(); i++) {
+      if (i >= previousChunks.size() || !chunks.get(i).equals(previousChunks.get(i))) {
+        changedChunks.add(i);
+      }
+    }
+    int removedChunks = Math.max(0, previousChunks.size() - chunks.size());
+    previousChunks = chunks;
+
+    return new Update(
+        markdown.toString(), chunks, changedChunks, removedChunks, reusedBlocks, convertedBlocks
+    );
+  }
+
+  /**
+   * Forgets the previous version, so the next {@link #update(String, String)} converts everything
+   * and reports all chunks as changed.
+   */
+  public void reset() {
+    previousBlocks.clear();
+    previousChunks = Collections.emptyList();
+  }
+
+  /**
+   * @param block The top level block
+   * @return The markdown the block had in the previous version or null if it is new or changed
+   */
+  private String reuseBlock(Element block) {
+    FragmentCache.Fingerprint fingerprint = fingerprintOf(block);
+    lastFingerprint = fingerprint;
+    String markdown = previousBlocks.get(fingerprint);
+    if (markdown != null) {
+      reusedBlocks++;
+      currentBlocks.put(fingerprint, markdown);
+    }
+    return markdown;
+  }
+
+  /**
+   * @param block The top level block
+   * @return The fingerprint of the block
+   */
+  private FragmentCache.Fingerprint fingerprintOf(Element block) {
+    // rejects a huge block early, the walker counts the elements of the whole document.
+    // Top level blocks are at depth 2, below the root.
+    fingerprints.compute(block, index, limits, 0, 2);
+    int id = index.getId(block);
+    return new FragmentCache.Fingerprint(fingerprints.getHigh(id), fingerprints.getLow(id));
+  }
+
+  /**
+   * @return The {@link MapperCollection} this converter uses
+   */
+  public MapperCollection getMappers() {
+    return mappers;
+  }
+
+  /**
+   * @return Whether unknown tags are silently ignored
+   */
+  public boolean isSilentlyIgnoreUnknownTags() {
+    return silentlyIgnoreUnknownTags;
+  }
+
+  /**
+   * @return The maximum length of a chunk
+   */
+  public int getBudget() {
+    return budget;
+  }
+
+  /**
+   * @return The {@link ConversionLimits} for every version of the document
+   */
+  public ConversionLimits getLimits() {
+    return limits;
+  }
+
+  /**
+   * @return The {@link FrontEnd} this converter parses the HTML with
+   */
+  public FrontEnd getFrontEnd() {
+    return frontEnd;
+  }
+
+  /**
+   * The result of converting a new version of the document
+   */
+  public static class Update {
+
+    private final String markdown;
+    private final List<String> chunks;
+    private final List<Integer> changedChunks;
+    private final int removedChunkCount;
+    private final int reusedBlockCount;
+    private final int convertedBlockCount;
+
+    /**
+     * @param markdown The converted markdown
+     * @param chunks The markdown, split into chunks
+     * @param changedChunks The indices of the chunks that differ from the previous version
+     * @param removedChunkCount The amount of chunks the previous version had in addition
+     * @param reusedBlockCount The amount of top level blocks that were reused
+     * @param convertedBlockCount The amount of top level blocks that were converted
+     */
+    private Update(String markdown, List<String> chunks, List<Integer> changedChunks,
+        int removedChunkCount, int reusedBlockCount, int convertedBlockCount) {
+      this.markdown = markdown;
+      this.chunks = Collections.unmodifiableList(chunks);
+      this.changedChunks = Collections.unmodifiableList(changedChunks);
+      this.removedChunkCount = removedChunkCount;
+      this.reusedBlockCount = reusedBlockCount;
+      this.convertedBlockCount = convertedBlockCount;
+    }
+
+    /**
+     * @return The converted markdown
+     */
+    public String getMarkdown() {
+      return markdown;
+    }
+
+    /**
+     * @return The markdown, split into chunks
+     */
+    public List<String> getChunks() {
+      return chunks;
+    }
+
+    /**
+     * @return The indices of the chunks that are new or differ from the chunk at the same index in
+     * the previous version, in ascending order
+     */
+    public List<Integer> getChangedChunks() {
+      return changedChunks;
+    }
+
+    /**
+     * @return The amount of chunks at the end of the previous version that no longer exist
+     */
+    public int getRemovedChunkCount() {
+      return removedChunkCount;
+    }
+
+    /**
+     * @return True if any chunk changed or was removed
+     */
+    public boolean hasChanges() {
+      return !changedChunks.isEmpty() || removedChunkCount > 0;
+    }
+
+    /**
+     * @return The amount of top level blocks whose markdown was reused
+     */
+    public int getReusedBlockCount() {
+      return reusedBlockCount;
+    }
+
+    /**
+     * @return The amount of top level blocks that were converted
+     */
+    public int getConvertedBlockCount() {
+      return convertedBlockCount;
+    }
+  }
+}
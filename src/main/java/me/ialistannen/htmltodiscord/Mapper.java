@@ -1,5 +1,8 @@
 package me.ialistannen.htmltodiscord;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * A Mapper
  */
@@ -31,6 +34,19 @@ public interface Mapper {
    */
   boolean matches(String htmlTag);
 
+  /**
+   * Returns the tags this mapper can match. The {@link MapperCollection} only asks the mapper
+   * about elements with one of these tags.
+   * <p>
+   * Mappers that can match elements regardless of their tag must return an empty set. They are
+   * asked about every element, in the same priority order as all other mappers.
+   *
+   * @return The tags this mapper can match, or an empty set if it matches by predicate only
+   */
+  default Set<String> getTags() {
+    return Collections.emptySet();
+  }
+
   /**
    * Converts the input
    *
@@ -1,23 +1,55 @@
 package me.ialistannen.htmltodiscord;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 
 /**
  * Contains all valid mappers
+ * <p>
+ * <b>Priority:</b> If more than one mapper matches an element, the one that was added last wins.
+ * This also holds between mappers that declare their tags (see {@link Mapper#getTags()}) and
+ * mappers that match by predicate only.
+ * <p>
+ * The mappers are indexed by their tags, so finding the mapper for an element only looks at the
+ * mappers for its tag and the predicate only ones, merged in the order they were added. The index
+ * is built when the collection is {@link #freeze() frozen}, or lazily after it was changed.
+ * <p>
+ * A collection is not thread safe until it is frozen. Frozen collections never change and can be
+ * shared, e.g. by a {@link SharedHtmlConverter}. The {@link ConversionListener} is the only thing
+ * that can still be set on a frozen collection.
  */
 public class MapperCollection {
 
-  private Set<Mapper> mapperMap = new HashSet<>();
+  private static final Mapper[] NO_MAPPERS = new Mapper[0];
+
+  private List<Mapper> mappers = new ArrayList<>();
+  private boolean frozen;
+  private int tableRowsPerBlock;
+
+  private Map<String, Mapper[]> tagIndex;
+  private Mapper[] predicateMappers;
+
+  private volatile ConversionListener listener;
 
   /**
    * Adds a mapper, overwriting existing
+   * <p>
+   * Adding a mapper that is already contained moves it to the highest priority.
    *
    * @param mapper The Mapper to add
+   * @throws IllegalStateException if this collection is frozen
    */
   public void addMapper(Mapper mapper) {
-    mapperMap.add(mapper);
+    if (frozen) {
+      throw new IllegalStateException("The collection is frozen and can not be changed.");
+    }
+    mappers.remove(mapper);
+    mappers.add(mapper);
+    tagIndex = null;
   }
 
   /**
@@ -42,12 +74,75 @@ public class MapperCollection {
     }
   }
 
+  /**
+   * Freezes this collection. It can not be changed afterwards and the tag index is built once.
+   *
+   * @return This {@link MapperCollection}
+   */
+  public MapperCollection freeze() {
+    if (!frozen) {
+      buildIndex();
+      frozen = true;
+    }
+    return this;
+  }
+
+  /**
+   * @return True if this collection is frozen
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Sets after how many rows a table is split into a new code block. A table in a single block
+   * that is longer than a message has its fence closed and reopened by the {@link
+   * me.ialistannen.htmltodiscord.util.MessageChunker MessageChunker} in the middle of a row, while
+   * smaller blocks can be split between the rows.
+   *
+   * @param tableRowsPerBlock The amount of rows of a block. Zero or less to print every table in
+   * a single block, which is the default.
+   * @throws IllegalStateException if this collection is frozen
+   */
+  public void setTableRowsPerBlock(int tableRowsPerBlock) {
+    if (frozen) {
+      throw new IllegalStateException("The collection is frozen and can not be changed.");
+    }
+    this.tableRowsPerBlock = tableRowsPerBlock;
+  }
+
+  /**
+   * @return The amount of rows after which a table is split into a new code block. Zero or less if
+   * every table is printed in a single block.
+   */
+  public int getTableRowsPerBlock() {
+    return tableRowsPerBlock;
+  }
+
+  /**
+   * Sets the listener that is told about every mapper lookup and invocation and table layout, and
+   * about the phases of every {@link SharedHtmlConverter} using this collection. Must be thread
+   * safe, if this collection is shared.
+   *
+   * @param listener The {@link ConversionListener} or null to measure nothing
+   */
+  public void setListener(ConversionListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * @return The {@link ConversionListener} or null if there is none
+   */
+  public ConversionListener getListener() {
+    return listener;
+  }
+
   /**
    * @param element The {@link WrappedElement} to check
    * @return The Mapper for the identifier, if any
    */
   public Optional<Mapper> getMapper(WrappedElement element) {
-    return mapperMap.stream().filter(mapper -> mapper.matches(element)).findAny();
+    return Optional.ofNullable(findMapper(element));
   }
 
   /**
@@ -55,6 +150,65 @@ public class MapperCollection {
    * @return True if the identifier is contained in this collection
    */
   public boolean hasMapper(WrappedElement element) {
-    return mapperMap.stream().anyMatch(mapper -> mapper.matches(element));
+    return findMapper(element) != null;
+  }
+
+  /**
+   * Finds the mapper with the highest priority for the element.
+   *
+   * @param element The {@link WrappedElement} to find the mapper for
+   * @return The mapper or null if none matches
+   */
+  Mapper findMapper(WrappedElement element) {
+    if (tagIndex == null) {
+      buildIndex();
+    }
+
+    // jsoup tag names are always lower case
+    Mapper[] candidates = tagIndex.getOrDefault(element.getWrapped().tagName(), predicateMappers);
+    for (Mapper candidate : candidates) {
+      if (candidate.matches(element)) {
+        return candidate;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Builds the tag index. Every list is ordered by descending priority and contains the mappers
+   * for its tag and the predicate only mappers, so both compete by the order they were added in.
+   */
+  private void buildIndex() {
+    Map<String, List<Mapper>> byTag = new HashMap<>();
+    List<Mapper> predicateOnly = new ArrayList<>();
+
+    for (Mapper mapper : mappers) {
+      for (String tag : mapper.getTags()) {
+        byTag.putIfAbsent(tag.toLowerCase(Locale.ROOT), new ArrayList<>());
+      }
+    }
+
+    for (int i = mappers.size() - 1; i >= 0; i--) {
+      Mapper mapper = mappers.get(i);
+      if (mapper.getTags().isEmpty()) {
+        predicateOnly.add(mapper);
+        byTag.values().forEach(list -> list.add(mapper));
+        continue;
+      }
+      for (String tag : mapper.getTags()) {
+        List<Mapper> list = byTag.get(tag.toLowerCase(Locale.ROOT));
+        // a mapper may declare the same tag twice in different cases
+        if (list.isEmpty() || list.get(list.size() - 1) != mapper) {
+          list.add(mapper);
+        }
+      }
+    }
+
+    Map<String, Mapper[]> index = new HashMap<>();
+    byTag.forEach((tag, list) -> index.put(tag, list.toArray(NO_MAPPERS)));
+
+    predicateMappers = predicateOnly.toArray(NO_MAPPERS);
+    tagIndex = index;
   }
 }
@@ -0,0 +1,602 @@
+package me.ialistannen.htmltodiscord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import me.ialistannen.htmltodiscord.util.MessageChunker;
+
+/**
+ * A persistent cache for converted documents, stored in a single append-only, memory-mapped file.
+ * <p>
+ * Every entry is keyed by a hash of the HTML, the base url, whether unknown tags are ignored, the
+ * {@link FrontEnd#getName() name} of the front end, the {@link ConversionLimits} and the {@link
+ * MapperCollection#getTableRowsPerBlock() rows per table block}.
+ * It contains the markdown, its chunks and the version of the mappers it was converted with.
+ * When a store is opened only the headers of the entries are read to build the index. The
+ * markdown stays in the mapped file until it is requested. Entries of a different mapper version
+ * are skipped, so increasing {@link StandardMappers#VERSION} invalidates all of them.
+ * <p>
+ * Entries are never removed or overwritten, a newer entry for the same key just shadows the
+ * older one. An entry is only visible once it was written completely, so a crash while writing
+ * loses at most that entry. When a store is opened, every entry is checked to fit in its length
+ * and the index stops at the first one that does not, so a torn entry and everything after it is
+ * overwritten by the next one.
+ * <p>
+ * The file format:
+ * <pre>
+ * file:   int magic, int format version, entry*, int 0
+ * entry:  int length of the rest of the entry, long hash high, long hash low,
+ *         int mapper version, int budget, int chunk count, chunk*, string markdown
+ * chunk:  int start, int end, string prefix, string suffix
+ * string: int length in bytes, UTF-8 bytes
+ * </pre>
+ * A chunk is the markdown between start and end with a prefix and suffix, like a reopened code
+ * fence.
+ * <p>
+ * This class is thread safe. The file is locked while the store is open, so it can not be used by
+ * two stores at once.
+ */
+public class PersistentConversionStore implements Closeable {
+
+  private static final int MAGIC = 0x48324443;
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  // the hash, mapper version, budget, chunk count and the length of the markdown
+  private static final int ENTRY_HEADER_SIZE = 16 + 4 + 4 + 4 + 4;
+  // the bounds and the lengths of the prefix and suffix
+  private static final int CHUNK_HEADER_SIZE = 4 + 4 + 4 + 4;
+  private static final int INITIAL_CAPACITY = 1 << 20;
+
+  private final int mapperVersion;
+  private final FileChannel channel;
+  private final FileLock lock;
+  private final Map<FragmentCache.Fingerprint, Integer> index = new HashMap<>();
+  private MappedByteBuffer buffer;
+  private int end;
+  private int staleCount;
+
+  /**
+   * Opens or creates a store for conversions with the {@link StandardMappers}.
+   *
+   * @param file The file to store the conversions in
+   * @throws IOException if the file can not be opened, is no conversion store or is used by
+   * another store
+   */
+  public PersistentConversionStore(Path file) throws IOException {
+    this(file, StandardMappers.VERSION);
+  }
+
+  /**
+   * Opens or creates a store.
+   *
+   * @param file The file to store the conversions in
+   * @param mapperVersion The version of the mappers, e.g. {@link StandardMappers#VERSION}.
+   * Entries of any other version are ignored.
+   * @throws IOException if the file can not be opened, is no conversion store or is used by
+   * another store
+   */
+  public PersistentConversionStore(Path file, int mapperVersion) throws IOException {
+    this.mapperVersion = mapperVersion;
+    this.channel = FileChannel.open(
+        file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+    );
+    try {
+      lock = lockFile(file);
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("The store is too big: " + size);
+      }
+      boolean created = size == 0;
+      buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(size, INITIAL_CAPACITY));
+
+      if (created) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+      } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+        throw new IOException("Not a conversion store or an unknown format: " + file);
+      }
+      readIndex();
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Locks the whole file for as long as the channel is open.
+   *
+   * @param file The file of the channel
+   * @return The exclusive {@link FileLock}
+   * @throws IOException if locking fails or the file is already locked
+   */
+  private FileLock lockFile(Path file) throws IOException {
+    FileLock fileLock;
+    try {
+      fileLock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // locked by this JVM
+      fileLock = null;
+    }
+    if (fileLock == null) {
+      throw new IOException("The store is used by another store: " + file);
+    }
+    return fileLock;
+  }
+
+  /**
+   * Reads the headers of all entries, up to the first one that is not valid.
+   */
+  private void readIndex() {
+    int position = HEADER_SIZE;
+    int length;
+    while ((length = checkEntry(position)) > 0) {
+      int entry = position + 4;
+      if (buffer.getInt(entry + 16) == mapperVersion) {
+        FragmentCache.Fingerprint key = new FragmentCache.Fingerprint(
+            buffer.getLong(entry), buffer.getLong(entry + 8)
+        );
+        if (index.put(key, position) != null) {
+          staleCount++;
+        }
+      } else {
+        staleCount++;
+      }
+      position = entry + length;
+    }
+    end = position;
+  }
+
+  /**
+   * Checks that the entry at the position is complete, i.e. all of its fields fit in its length.
+   *
+   * @param position The position of the length of the entry
+   * @return The length of the entry without its own length or -1 if there is no valid entry
+   */
+  private int checkEntry(int position) {
+    if (position > buffer.capacity() - 4) {
+      return -1;
+    }
+    int length = buffer.getInt(position);
+    // a zero marks the end, anything that does not fit an entry that was cut off
+    if (length < ENTRY_HEADER_SIZE || length > buffer.capacity() - position - 4) {
+      return -1;
+    }
+    int entry = position + 4;
+    int entryEnd = entry + length;
+
+    int chunkCount = buffer.getInt(entry + 24);
+    if (chunkCount < 0 || chunkCount > (length - ENTRY_HEADER_SIZE) / CHUNK_HEADER_SIZE) {
+      return -1;
+    }
+    int field = entry + 28;
+    for (int i = 0; i < chunkCount; i++) {
+      if (field > entryEnd - 8) {
+        return -1;
+      }
+      int start = buffer.getInt(field);
+      int end = buffer.getInt(field + 4);
+      if (start < 0 || end < start) {
+        return -1;
+      }
+      // the prefix and the suffix
+      field = skipString(skipString(field + 8, entryEnd), entryEnd);
+      if (field < 0) {
+        return -1;
+      }
+    }
+    return skipString(field, entryEnd) == entryEnd ? length : -1;
+  }
+
+  /**
+   * @param position The position of the length of a string or -1
+   * @param entryEnd The end of the entry the string is in
+   * @return The position after the string or -1 if it does not fit in the entry
+   */
+  private int skipString(int position, int entryEnd) {
+    if (position < 0 || position > entryEnd - 4) {
+      return -1;
+    }
+    int length = buffer.getInt(position);
+    if (length < 0 || length > entryEnd - position - 4) {
+      return -1;
+    }
+    return position + 4 + length;
+  }
+
+  /**
+   * Returns the stored conversion of a document parsed by {@link
+   * StandardFrontEnds#WRAPPED_DOCUMENT}.
+   *
+   * @param html The HTML code
+   * @param baseUrl The base url of the website
+   * @param silentlyIgnoreUnknownTags Whether unknown tags were silently ignored
+   * @return The stored {@link Entry} or null if there is none
+   */
+  public Entry get(String html, String baseUrl, boolean silentlyIgnoreUnknownTags) {
+    return get(html, baseUrl, silentlyIgnoreUnknownTags, StandardFrontEnds.WRAPPED_DOCUMENT);
+  }
+
+  /**
+   * Returns the stored conversion of the document.
+   *
+   * @param html The HTML code
+   * @param baseUrl The base url of the website
+   * @param silentlyIgnoreUnknownTags Whether unknown tags were silently ignored
+   * @param frontEnd The {@link FrontEnd} the HTML was parsed with
+   * @return The stored {@link Entry} or null if there is none
+   */
+  public Entry get(String html, String baseUrl, boolean silentlyIgnoreUnknownTags,
+      FrontEnd frontEnd) {
+    return get(hash(
+        html, baseUrl, silentlyIgnoreUnknownTags, frontEnd, ConversionLimits.NONE, 0
+    ));
+  }
+
+  /**
+   * Returns the stored conversion of the document, if it was converted with the same settings as
+   * the converter uses.
+   *
+   * @param converter The {@link SharedHtmlConverter} whose settings the document was converted
+   * with
+   * @param html The HTML code
+   * @param baseUrl The base url of the website
+   * @return The stored {@link Entry} or null if there is none
+   */
+  public Entry get(SharedHtmlConverter converter, String html, String baseUrl) {
+    return get(hash(converter, html, baseUrl));
+  }
+
+  /**
+   * Returns the stored conversion of the document or converts and stores it.
+   * <p>
+   * If the stored chunks were split for a different budget, the markdown is split again. The
+   * store is not updated in that case.
+   *
+   * @param converter The {@link SharedHtmlConverter} to convert the document with. Its mappers
+   * must match the mapper version of this store.
+   * @param html The HTML code to convert
+   * @param baseUrl The base url of the website. Used to resolve Links
+   * @param budget The maximum length of a chunk, e.g. {@link MessageChunker#MESSAGE_LIMIT}
+   * @return The {@link Entry} with the markdown and its chunks
+   * @throws IllegalStateException if the store is full or closed
+   * @throws UncheckedIOException if the file can not be grown
+   */
+  public Entry convert(SharedHtmlConverter converter, String html, String baseUrl, int budget) {
+    FragmentCache.Fingerprint key = hash(converter, html, baseUrl);
+    Entry entry = get(key);
+    if (entry != null) {
+      if (entry.getBudget() == budget) {
+        return entry;
+      }
+      String markdown = entry.getMarkdown();
+      return new Entry(markdown, MessageChunker.chunk(markdown, budget), budget);
+    }
+
+    String markdown = converter.convert(html, baseUrl);
+    entry = new Entry(markdown, MessageChunker.chunk(markdown, budget), budget);
+    put(key, entry);
+    return entry;
+  }
+
+  /**
+   * @param key The hash of the document
+   * @return The stored {@link Entry} or null if there is none
+   */
+  private synchronized Entry get(FragmentCache.Fingerprint key) {
+    checkOpen();
+    Integer position = index.get(key);
+    if (position == null) {
+      return null;
+    }
+    ByteBuffer entry = buffer.duplicate();
+    // skip the length, the hash and the mapper version
+    entry.position(position + 4 + 20);
+
+    int budget = entry.getInt();
+    int chunkCount = entry.getInt();
+    int[] bounds = new int[chunkCount * 2];
+    String[] prefixes = new String[chunkCount];
+    String[] suffixes = new String[chunkCount];
+    for (int i = 0; i < chunkCount; i++) {
+      bounds[i * 2] = entry.getInt();
+      bounds[i * 2 + 1] = entry.getInt();
+      prefixes[i] = readString(entry);
+      suffixes[i] = readString(entry);
+    }
+    String markdown = readString(entry);
+
+    List<String> chunks = new ArrayList<>(chunkCount);
+    for (int i = 0; i < chunkCount; i++) {
+      if (bounds[i * 2 + 1] > markdown.length()) {
+        // the entry is complete, but its bounds are not, so it is treated as missing
+        index.remove(key);
+        return null;
+      }
+      chunks.add(prefixes[i] + markdown.substring(bounds[i * 2], bounds[i * 2 + 1]) + suffixes[i]);
+    }
+    return new Entry(markdown, chunks, budget);
+  }
+
+  /**
+   * Appends an entry to the file.
+   *
+   * @param key The hash of the document
+   * @param entry The entry to store
+   */
+  private synchronized void put(FragmentCache.Fingerprint key, Entry entry) {
+    checkOpen();
+    byte[] record = encode(key, entry);
+
+    // the entry, its length and the zero after it that marks the end
+    long required = (long) end + 4 + record.length + 4;
+    if (required > Integer.MAX_VALUE) {
+      throw new IllegalStateException("The store is full.");
+    }
+    if (required > buffer.capacity()) {
+      long capacity = Math.min(Math.max(required, (long) buffer.capacity() * 2), Integer.MAX_VALUE);
+      try {
+        buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    ByteBuffer target = buffer.duplicate();
+    target.position(end + 4);
+    target.put(record);
+    target.putInt(0);
+    // the length is written last, so the entry only becomes visible once it is complete
+    buffer.putInt(end, record.length);
+
+    index.put(key, end);
+    end += 4 + record.length;
+  }
+
+  /**
+   * @param key The hash of the document
+   * @param entry The entry
+   * @return The entry without its length
+   */
+  private byte[] encode(FragmentCache.Fingerprint key, Entry entry) {
+    String markdown = entry.getMarkdown();
+    List<String> chunks = entry.getChunks();
+
+    int[] bounds = new int[chunks.size() * 2];
+    byte[][] prefixes = new byte[chunks.size()][];
+    byte[][] suffixes = new byte[chunks.size()][];
+    int size = 16 + 4 + 4 + 4;
+    int searchFrom = 0;
+    for (int i = 0; i < chunks.size(); i++) {
+      String chunk = chunks.get(i);
+      int[] slice = findSlice(markdown, chunk, searchFrom);
+      bounds[i * 2] = slice[0];
+      bounds[i * 2 + 1] = slice[0] + slice[2] - slice[1];
+      prefixes[i] = chunk.substring(0, slice[1]).getBytes(StandardCharsets.UTF_8);
+      suffixes[i] = chunk.substring(slice[2]).getBytes(StandardCharsets.UTF_8);
+      searchFrom = bounds[i * 2 + 1];
+      size += 8 + 4 + prefixes[i].length + 4 + suffixes[i].length;
+    }
+    byte[] markdownBytes = markdown.getBytes(StandardCharsets.UTF_8);
+    size += 4 + markdownBytes.length;
+
+    ByteBuffer record = ByteBuffer.allocate(size);
+    record.putLong(key.getHigh()).putLong(key.getLow());
+    record.putInt(mapperVersion).putInt(entry.getBudget()).putInt(chunks.size());
+    for (int i = 0; i < chunks.size(); i++) {
+      record.putInt(bounds[i * 2]).putInt(bounds[i * 2 + 1]);
+      record.putInt(prefixes[i].length).put(prefixes[i]);
+      record.putInt(suffixes[i].length).put(suffixes[i]);
+    }
+    record.putInt(markdownBytes.length).put(markdownBytes);
+    return record.array();
+  }
+
+  /**
+   * Finds the part of a chunk that is copied from the markdown. A chunk may start with a reopened
+   * code fence and end with a closing one, which are not part of the markdown at that position.
+   *
+   * @param markdown The markdown
+   * @param chunk The chunk
+   * @param searchFrom Where the previous chunk ended in the markdown
+   * @return The start in the markdown, and the start and end of the copied part in the chunk. If
+   * no part is found the whole chunk is the prefix.
+   */
+  private static int[] findSlice(String markdown, String chunk, int searchFrom) {
+    int prefixEnd = chunk.startsWith("```") ? chunk.indexOf('\n') + 1 : 0;
+    int suffixStart = chunk.endsWith("\n```") ? chunk.length() - 4 : chunk.length();
+
+    int[][] candidates = {
+        {0, chunk.length()},
+        {0, suffixStart},
+        {prefixEnd, chunk.length()},
+        {prefixEnd, suffixStart}
+    };
+    for (int[] candidate : candidates) {
+      if (candidate[0] > candidate[1]) {
+        continue;
+      }
+      String part = chunk.substring(candidate[0], candidate[1]);
+      int start = markdown.indexOf(part, searchFrom);
+      if (start < 0) {
+        start = markdown.indexOf(part);
+      }
+      if (start >= 0) {
+        return new int[]{start, candidate[0], candidate[1]};
+      }
+    }
+    return new int[]{0, chunk.length(), chunk.length()};
+  }
+
+  /**
+   * @param buffer The buffer to read from
+   * @return The read string
+   */
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param converter The {@link SharedHtmlConverter} the document is converted with
+   * @param html The HTML code
+   * @param baseUrl The base url of the website
+   * @return The first 128 bits of the SHA-256 hash of the document and the converter settings
+   */
+  static FragmentCache.Fingerprint hash(SharedHtmlConverter converter, String html,
+      String baseUrl) {
+    return hash(
+        html, baseUrl, converter.isSilentlyIgnoreUnknownTags(), converter.getFrontEnd(),
+        converter.getLimits(), converter.getMappers().getTableRowsPerBlock()
+    );
+  }
+
+  /**
+   * @param html The HTML code
+   * @param baseUrl The base url of the website
+   * @param silentlyIgnoreUnknownTags Whether unknown tags are silently ignored
+   * @param frontEnd The {@link FrontEnd} the HTML is parsed with
+   * @param limits The {@link ConversionLimits} the document is converted with
+   * @param tableRowsPerBlock The rows per table block of the mappers
+   * @return The first 128 bits of the SHA-256 hash of the document
+   */
+  private static FragmentCache.Fingerprint hash(String html, String baseUrl,
+      boolean silentlyIgnoreUnknownTags, FrontEnd frontEnd, ConversionLimits limits,
+      int tableRowsPerBlock) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform has to support SHA-256
+      throw new IllegalStateException(e);
+    }
+    byte[] htmlBytes = html.getBytes(StandardCharsets.UTF_8);
+    digest.update(ByteBuffer.allocate(4).putInt(htmlBytes.length).array());
+    digest.update(htmlBytes);
+    byte[] baseUrlBytes = baseUrl.getBytes(StandardCharsets.UTF_8);
+    digest.update(ByteBuffer.allocate(4).putInt(baseUrlBytes.length).array());
+    digest.update(baseUrlBytes);
+    digest.update((byte) (silentlyIgnoreUnknownTags ? 1 : 0));
+    // a table split into blocks is printed differently
+    int rowsPerBlock = Math.max(tableRowsPerBlock, 0);
+    digest.update(ByteBuffer.allocate(12)
+        .putInt(limits.getMaxElements())
+        .putInt(limits.getMaxDepth())
+        .putInt(rowsPerBlock)
+        .array());
+    digest.update(frontEnd.getName().getBytes(StandardCharsets.UTF_8));
+
+    ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+    return new FragmentCache.Fingerprint(hash.getLong(), hash.getLong());
+  }
+
+  /**
+   * @throws IllegalStateException if the store was closed
+   */
+  private void checkOpen() {
+    if (!channel.isOpen()) {
+      throw new IllegalStateException("The store is closed.");
+    }
+  }
+
+  /**
+   * @return The amount of entries that can be found
+   */
+  public synchronized int size() {
+    return index.size();
+  }
+
+  /**
+   * @return The amount of entries in the file that are shadowed by a newer one or were converted
+   * with a different mapper version
+   */
+  public synchronized int getStaleCount() {
+    return staleCount;
+  }
+
+  /**
+   * @return The amount of bytes used in the file
+   */
+  public synchronized int getUsedBytes() {
+    return end + 4;
+  }
+
+  /**
+   * @return The version of the mappers of the entries in this store
+   */
+  public int getMapperVersion() {
+    return mapperVersion;
+  }
+
+  /**
+   * Writes all entries to the disk and closes the file.
+   *
+   * @throws IOException if closing the file fails
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel.isOpen()) {
+      buffer.force();
+      lock.release();
+      channel.close();
+    }
+  }
+
+  /**
+   * A stored conversion
+   */
+  public static class Entry {
+
+    private final String markdown;
+    private final List<String> chunks;
+    private final int budget;
+
+    /**
+     * @param markdown The converted markdown
+     * @param chunks The markdown, split into chunks
+     * @param budget The maximum length of a chunk
+     */
+    private Entry(String markdown, List<String> chunks, int budget) {
+      this.markdown = markdown;
+      this.chunks = Collections.unmodifiableList(chunks);
+      this.budget = budget;
+    }
+
+    /**
+     * @return The converted markdown
+     */
+    public String getMarkdown() {
+      return markdown;
+    }
+
+    /**
+     * @return The markdown, split into chunks
+     */
+    public List<String> getChunks() {
+      return chunks;
+    }
+
+    /**
+     * @return The maximum length of a chunk the markdown was split for
+     */
+    public int getBudget() {
+      return budget;
+    }
+  }
+}
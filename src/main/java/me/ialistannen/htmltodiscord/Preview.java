@@ -0,0 +1,82 @@
+package me.ialistannen.htmltodiscord;
+
+/**
+ * A page of a document that is converted lazily, block by block.
+ * <p>
+ * A preview contains the markdown of the top level blocks that fit in its character budget and
+ * remembers where it stopped. The next page is converted with {@link
+ * SharedHtmlConverter#convertPreview(Preview, int)}, which continues after the last block without
+ * converting the earlier ones again. Joining all pages gives the same markdown as {@link
+ * SharedHtmlConverter#convert(String, String, Appendable)}.
+ * <p>
+ * Every page can only be continued once.
+ */
+public class Preview {
+
+  private final SharedHtmlConverter converter;
+  private final String markdown;
+  private final TreeWalker.RootStream stream;
+  private final String heldBack;
+  private boolean continued;
+
+  /**
+   * @param converter The {@link SharedHtmlConverter} that converted this page
+   * @param markdown The markdown of this page
+   * @param stream The state of the conversion after this page
+   * @param heldBack The already converted block that did not fit in this page or null
+   */
+  Preview(SharedHtmlConverter converter, String markdown, TreeWalker.RootStream stream,
+      String heldBack) {
+    this.converter = converter;
+    this.markdown = markdown;
+    this.stream = stream;
+    this.heldBack = heldBack;
+  }
+
+  /**
+   * @return The markdown of this page
+   */
+  public String getMarkdown() {
+    return markdown;
+  }
+
+  /**
+   * @return True if there is nothing left after this page
+   */
+  public boolean isComplete() {
+    return heldBack == null && (stream == null || stream.isFinished());
+  }
+
+  /**
+   * @return The {@link SharedHtmlConverter} that converted this page
+   */
+  SharedHtmlConverter getConverter() {
+    return converter;
+  }
+
+  /**
+   * @return The state of the conversion after this page
+   */
+  TreeWalker.RootStream getStream() {
+    return stream;
+  }
+
+  /**
+   * @return The already converted block that did not fit in this page or null
+   */
+  String getHeldBack() {
+    return heldBack;
+  }
+
+  /**
+   * Marks this page as continued.
+   *
+   * @throws IllegalStateException if it was already continued
+   */
+  synchronized void markContinued() {
+    if (continued) {
+      throw new IllegalStateException("This preview was already continued.");
+    }
+    continued = true;
+  }
+}
@@ -0,0 +1,460 @@
+package me.ialistannen.htmltodiscord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import me.ialistannen.htmltodiscord.util.MessageChunker;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Elements;
+
+/**
+ * An immutable HTML to markdown converter that can be shared between threads.
+ * <p>
+ * Unlike the {@link HtmlConverter} it is built once and then converts any number of documents,
+ * concurrently if needed. It always uses the {@link ConversionEngine#TREE_WALK} engine.
+ * <p>
+ * The scratch state of a conversion (builders, storage and metadata) is pooled per thread, so it
+ * is only allocated once per thread. After a huge document it is allocated again, so the pool
+ * does not keep its peak size.
+ * <p>
+ * The phases of every conversion are reported to the {@link ConversionListener} of the {@link
+ * MapperCollection}, if it has one.
+ */
+public class SharedHtmlConverter {
+
+  private final MapperCollection mappers;
+  private final boolean silentlyIgnoreUnknownTags;
+  private final FragmentCache fragmentCache;
+  private final ConversionLimits limits;
+  private final FrontEnd frontEnd;
+  private final ThreadLocal<TreeWalker> walkers;
+
+  /**
+   * Creates a converter that fails on unknown tags.
+   *
+   * @param mappers The {@link Mapper}s to use. Must be {@link MapperCollection#freeze() frozen}.
+   * @throws IllegalArgumentException if the collection is not frozen
+   */
+  public SharedHtmlConverter(MapperCollection mappers) {
+    this(mappers, false);
+  }
+
+  /**
+   * @param mappers The {@link Mapper}s to use. Must be {@link MapperCollection#freeze() frozen}.
+   * @param silentlyIgnoreUnknownTags Whether to silently ignore unknown tags
+   * @throws IllegalArgumentException if the collection is not frozen
+   */
+  public SharedHtmlConverter(MapperCollection mappers, boolean silentlyIgnoreUnknownTags) {
+    this(mappers, silentlyIgnoreUnknownTags, null);
+  }
+
+  /**
+   * @param mappers The {@link Mapper}s to use. Must be {@link MapperCollection#freeze() frozen}.
+   * @param silentlyIgnoreUnknownTags Whether to silently ignore unknown tags
+   * @param fragmentCache The {@link FragmentCache} to reuse the markdown of repeated subtrees
+   * with or null to convert every element
+   * @throws IllegalArgumentException if the collection is not frozen or the cache is used with a
+   * different collection
+   */
+  public SharedHtmlConverter(MapperCollection mappers, boolean silentlyIgnoreUnknownTags,
+      FragmentCache fragmentCache) {
+    this(mappers, silentlyIgnoreUnknownTags, fragmentCache, ConversionLimits.NONE);
+  }
+
+  /**
+   * @param mappers The {@link Mapper}s to use. Must be {@link MapperCollection#freeze() frozen}.
+   * @param silentlyIgnoreUnknownTags Whether to silently ignore unknown tags
+   * @param fragmentCache The {@link FragmentCache} to reuse the markdown of repeated subtrees
+   * with or null to convert every element
+   * @param limits The {@link ConversionLimits} for the documents
+   * @throws IllegalArgumentException if the collection is not frozen or the cache is used with a
+   * different collection
+   */
+  public SharedHtmlConverter(MapperCollection mappers, boolean silentlyIgnoreUnknownTags,
+      FragmentCache fragmentCache, ConversionLimits limits) {
+    this(
+        mappers, silentlyIgnoreUnknownTags, fragmentCache, limits,
+        StandardFrontEnds.WRAPPED_DOCUMENT
+    );
+  }
+
+  /**
+   * @param mappers The {@link Mapper}s to use. Must be {@link MapperCollection#freeze() frozen}.
+   * @param silentlyIgnoreUnknownTags Whether to silently ignore unknown tags
+   * @param fragmentCache The {@link FragmentCache} to reuse the markdown of repeated subtrees
+   * with or null to convert every element
+   * @param limits The {@link ConversionLimits} for the documents
+   * @param frontEnd The {@link FrontEnd} to parse the HTML with. Must be thread safe.
+   * @throws IllegalArgumentException if the collection is not frozen or the cache is used with a
+   * different collection
+   */
+  public SharedHtmlConverter(MapperCollection mappers, boolean silentlyIgnoreUnknownTags,
+      FragmentCache fragmentCache, ConversionLimits limits, FrontEnd frontEnd) {
+    if (!mappers.isFrozen()) {
+      throw new IllegalArgumentException("The MapperCollection must be frozen to be shared.");
+    }
+    if (fragmentCache != null) {
+      fragmentCache.bind(mappers);
+    }
+    this.mappers = mappers;
+    this.silentlyIgnoreUnknownTags = silentlyIgnoreUnknownTags;
+    this.fragmentCache = fragmentCache;
+    this.limits = Objects.requireNonNull(limits, "limits can not be null!");
+    this.frontEnd = Objects.requireNonNull(frontEnd, "frontEnd can not be null!");
+    this.walkers = ThreadLocal.withInitial(this::createWalker);
+  }
+
+  /**
+   * Converts the HTML to markdown. Safe to call from multiple threads at once.
+   *
+   * @param html The HTML code to convert
+   * @param baseUrl The base url of the website. Used to resolve Links
+   * @return The converted markdown
+   */
+  public String convert(String html, String baseUrl) {
+    ConversionListener listener = mappers.getListener();
+    Element body = parseBody(html, baseUrl, listener);
+
+    TreeWalker walker = acquireWalker();
+    long start = startPhase(listener);
+    try {
+      return walker.convertBody(body);
+    } finally {
+      endPhase(listener, start);
+      releaseWalker(walker);
+    }
+  }
+
+  /**
+   * Converts the HTML to markdown and writes it to the {@link Appendable}. Safe to call from
+   * multiple threads at once.
+   * <p>
+   * The markdown of every top level block is written as soon as it is converted and then
+   * forgotten, so a big document is never held in memory as a whole.
+   *
+   * @param html The HTML code to convert
+   * @param baseUrl The base url of the website. Used to resolve Links
+   * @param out The {@link Appendable} to write the markdown to
+   * @throws IOException if writing to the {@link Appendable} fails
+   */
+  public void convert(String html, String baseUrl, Appendable out) throws IOException {
+    ConversionListener listener = mappers.getListener();
+    Element body = parseBody(html, baseUrl, listener);
+
+    TreeWalker walker = acquireWalker();
+    long start = startPhase(listener);
+    try {
+      walker.streamBody(body, out);
+    } finally {
+      endPhase(listener, start);
+      releaseWalker(walker);
+    }
+  }
+
+  /**
+   * Converts an element of an already parsed document. Safe to call from multiple threads at
+   * once, as long as the document is not changed meanwhile.
+   * <p>
+   * The element is converted as if it was the only child of the root, but without serializing
+   * and parsing it again. The document is not changed. Links are resolved against the base uri of
+   * their element and entities are decoded like in {@link #convert(String, String, Appendable)}.
+   *
+   * @param element The element to convert. A {@link Document} is converted like in {@link
+   * #convert(Document)}.
+   * @return The converted markdown
+   */
+  public String convert(Element element) {
+    if (element instanceof Document) {
+      return convert((Document) element);
+    }
+    return convertInPlace(Collections.singletonList(element), element.baseUri());
+  }
+
+  /**
+   * Converts elements of an already parsed document, e.g. the result of a {@link
+   * Element#select(String) select}. Safe to call from multiple threads at once, as long as the
+   * document is not changed meanwhile.
+   *
+   * @param elements The elements to convert. They are converted as if they were the children of
+   * the root, one after another.
+   * @return The converted markdown
+   * @see #convert(Element)
+   */
+  public String convert(Elements elements) {
+    String baseUri = elements.isEmpty() ? "" : elements.first().baseUri();
+    return convertInPlace(elements, baseUri);
+  }
+
+  /**
+   * Converts the body of an already parsed document. Safe to call from multiple threads at once,
+   * as long as the document is not changed meanwhile.
+   *
+   * @param document The document to convert. If it has no body, like an XML document, all of its
+   * nodes are converted.
+   * @return The converted markdown
+   * @see #convert(Element)
+   */
+  public String convert(Document document) {
+    Element body = document.body();
+    Element content = body == null ? document : body;
+    return convertInPlace(content.childNodes(), content.baseUri());
+  }
+
+  /**
+   * @param nodes The nodes to convert as the children of the root
+   * @param baseUri The base uri of the root
+   * @return The converted markdown
+   */
+  private String convertInPlace(List<? extends Node> nodes, String baseUri) {
+    StringBuilder markdown = new StringBuilder();
+    ConversionListener listener = mappers.getListener();
+
+    TreeWalker walker = acquireWalker();
+    long start = startPhase(listener);
+    try {
+      TreeWalker.RootStream stream = walker.startVirtualStream(nodes, baseUri);
+      while (walker.streamNext(stream, markdown)) {
+        // every call writes one block
+      }
+    } catch (IOException e) {
+      // a StringBuilder never throws
+      throw new UncheckedIOException(e);
+    } finally {
+      endPhase(listener, start);
+      releaseWalker(walker);
+    }
+    return markdown.toString();
+  }
+
+  /**
+   * Converts the first page of a document, for example to show a preview of it. Safe to call from
+   * multiple threads at once.
+   * <p>
+   * The top level blocks are converted in document order until the next one does not fit in the
+   * budget anymore. That block is kept for the next page, which can be converted with {@link
+   * #convertPreview(Preview, int)} without converting the earlier blocks again. A single block
+   * that is longer than the budget is still returned as a whole, so a page may be longer than the
+   * budget. Entities are decoded like in {@link #convert(String, String, Appendable)}.
+   *
+   * @param html The HTML code to convert
+   * @param baseUrl The base url of the website. Used to resolve Links
+   * @param budget The amount of characters of a page
+   * @return The first page
+   * @throws IllegalArgumentException if the budget is not positive
+   */
+  public Preview convertPreview(String html, String baseUrl, int budget) {
+    checkBudget(budget);
+    ConversionListener listener = mappers.getListener();
+    Element body = parseBody(html, baseUrl, listener);
+
+    TreeWalker walker = acquireWalker();
+    long start = startPhase(listener);
+    try {
+      return convertPage(walker, walker.startBody(body), null, budget);
+    } finally {
+      endPhase(listener, start);
+      releaseWalker(walker);
+    }
+  }
+
+  /**
+   * Converts the page after the given one. Safe to call from multiple threads at once, but every
+   * page can only be continued once.
+   *
+   * @param previous The previous page
+   * @param budget The amount of characters of a page
+   * @return The next page. Empty if the previous page was {@link Preview#isComplete() complete}.
+   * @throws IllegalArgumentException if the budget is not positive or the previous page was
+   * converted by a different converter
+   * @throws IllegalStateException if the previous page was already continued
+   * @see #convertPreview(String, String, int)
+   */
+  public Preview convertPreview(Preview previous, int budget) {
+    checkBudget(budget);
+    if (previous.getConverter() != this) {
+      throw new IllegalArgumentException("The preview was converted by a different converter.");
+    }
+    previous.markContinued();
+    ConversionListener listener = mappers.getListener();
+
+    TreeWalker walker = acquireWalker();
+    long start = startPhase(listener);
+    try {
+      return convertPage(walker, previous.getStream(), previous.getHeldBack(), budget);
+    } finally {
+      endPhase(listener, start);
+      releaseWalker(walker);
+    }
+  }
+
+  /**
+   * @param walker The walker to convert the blocks with
+   * @param stream The state of the conversion or null if the document is empty
+   * @param heldBack The block that did not fit in the previous page or null
+   * @param budget The amount of characters of a page
+   * @return The page
+   */
+  private Preview convertPage(TreeWalker walker, TreeWalker.RootStream stream, String heldBack,
+      int budget) {
+    StringBuilder page = new StringBuilder();
+    if (heldBack != null) {
+      page.append(heldBack);
+    }
+
+    StringBuilder block = new StringBuilder();
+    try {
+      while (stream != null && walker.streamNext(stream, block)) {
+        // empty blocks always fit and every page takes at least one block, to make progress
+        boolean fits = page.length() + block.length() <= budget || block.length() == 0;
+        if (!fits && page.length() > 0) {
+          return new Preview(this, page.toString(), stream, block.toString());
+        }
+        page.append(block);
+        block.setLength(0);
+      }
+    } catch (IOException e) {
+      // a StringBuilder never throws
+      throw new UncheckedIOException(e);
+    }
+    return new Preview(this, page.toString(), stream, null);
+  }
+
+  /**
+   * @param budget The amount of characters of a page
+   * @throws IllegalArgumentException if the budget is not positive
+   */
+  private static void checkBudget(int budget) {
+    if (budget <= 0) {
+      throw new IllegalArgumentException("budget must be > 0 but was " + budget);
+    }
+  }
+
+  /**
+   * Parses the HTML and tells the listener how long it took, if there is one.
+   *
+   * @param html The HTML code to parse
+   * @param baseUrl The base url of the website. Used to resolve Links
+   * @param listener The {@link ConversionListener} or null
+   * @return The body to convert
+   */
+  private Element parseBody(String html, String baseUrl, ConversionListener listener) {
+    if (listener == null) {
+      return frontEnd.parseBody(html, baseUrl);
+    }
+    long start = System.nanoTime();
+    Element body = frontEnd.parseBody(html, baseUrl);
+    listener.onPhase(ConversionListener.Phase.PARSE, System.nanoTime() - start);
+    return body;
+  }
+
+  /**
+   * @param listener The {@link ConversionListener} or null
+   * @return The start time of a phase or 0 if there is no listener
+   */
+  private static long startPhase(ConversionListener listener) {
+    return listener == null ? 0 : System.nanoTime();
+  }
+
+  /**
+   * Tells the listener about a finished {@link ConversionListener.Phase#CONVERT convert} phase,
+   * if there is one.
+   *
+   * @param listener The {@link ConversionListener} or null
+   * @param start The start time returned by {@link #startPhase(ConversionListener)}
+   */
+  private static void endPhase(ConversionListener listener, long start) {
+    if (listener != null) {
+      listener.onPhase(ConversionListener.Phase.CONVERT, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * @return The walker of this thread or a new one, if it is already in use
+   */
+  private TreeWalker acquireWalker() {
+    TreeWalker walker = walkers.get();
+    // a mapper may convert another document on the same thread
+    if (walker.isInUse()) {
+      walker = createWalker();
+    }
+    walker.setInUse(true);
+    return walker;
+  }
+
+  /**
+   * Resets the walker and gives it back. A walker that grew too big is dropped instead, so one
+   * huge document does not pin its buffers to the thread forever.
+   *
+   * @param walker The walker to reset and give back
+   */
+  private void releaseWalker(TreeWalker walker) {
+    walker.reset();
+    walker.setInUse(false);
+    if (walker.isOversized() && walkers.get() == walker) {
+      walkers.remove();
+    }
+  }
+
+  /**
+   * Converts the HTML to markdown and splits it into chunks that fit in a Discord message. Safe to
+   * call from multiple threads at once.
+   *
+   * @param html The HTML code to convert
+   * @param baseUrl The base url of the website. Used to resolve Links
+   * @param budget The maximum length of a chunk, e.g. {@link MessageChunker#MESSAGE_LIMIT}
+   * @return The converted markdown, split into chunks
+   * @see MessageChunker
+   */
+  public List<String> convertChunked(String html, String baseUrl, int budget) {
+    return MessageChunker.chunk(convert(html, baseUrl), budget);
+  }
+
+  /**
+   * @return A new walker for this converter
+   */
+  private TreeWalker createWalker() {
+    TreeWalker walker = new TreeWalker(mappers, silentlyIgnoreUnknownTags);
+    walker.setFragmentCache(fragmentCache);
+    walker.setLimits(limits);
+    return walker;
+  }
+
+  /**
+   * @return The {@link MapperCollection} this converter uses
+   */
+  public MapperCollection getMappers() {
+    return mappers;
+  }
+
+  /**
+   * @return Whether unknown tags are silently ignored
+   */
+  public boolean isSilentlyIgnoreUnknownTags() {
+    return silentlyIgnoreUnknownTags;
+  }
+
+  /**
+   * @return The {@link ConversionLimits} for the documents
+   */
+  public ConversionLimits getLimits() {
+    return limits;
+  }
+
+  /**
+   * @return The {@link FrontEnd} this converter parses the HTML with
+   */
+  public FrontEnd getFrontEnd() {
+    return frontEnd;
+  }
+
+  /**
+   * @return The {@link FragmentCache} this converter uses or null if it has none
+   */
+  public FragmentCache getFragmentCache() {
+    return fragmentCache;
+  }
+}
@@ -0,0 +1,85 @@
+package me.ialistannen.htmltodiscord;
+
+import java.util.List;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+/**
+ * The standard front ends
+ */
+public enum StandardFrontEnds implements FrontEnd {
+
+  /**
+   * Wraps the HTML in a {@code <root>} tag and parses it as a whole document.
+   * <p>
+   * This is the original front end. Content the HTML parser moves out of the {@code <root>} tag
+   * ends up in other children of the body.
+   */
+  WRAPPED_DOCUMENT {
+    @Override
+    public Element parseBody(String html, String baseUrl) {
+      return Jsoup.parse("<root>" + html + "</root>", baseUrl).body();
+    }
+  },
+
+  /**
+   * Parses the HTML as the content of a body and renames the body to {@code <root>}.
+   * <p>
+   * The input is not copied into a wrapper and nothing can escape the root. Apart from that, the
+   * HTML is parsed with the same rules as by {@link #WRAPPED_DOCUMENT}.
+   */
+  BODY_FRAGMENT {
+    @Override
+    public Element parseBody(String html, String baseUrl) {
+      Document document = Parser.parseBodyFragment(html, baseUrl);
+      Element root = document.body().tagName("root");
+      document.head().remove();
+      // the html element is left with the root as its only child
+      return root.parent();
+    }
+  },
+
+  /**
+   * Parses the HTML as an XML fragment.
+   * <p>
+   * This is the fastest front end, but only meant for well-formed XHTML: None of the HTML rules
+   * apply, so void elements like {@code <br>} must be closed and nothing is fixed up or added
+   * (e.g. {@code <tbody>}).
+   */
+  XML_FRAGMENT {
+    @Override
+    public Element parseBody(String html, String baseUrl) {
+      List<Node> nodes = Parser.parseXmlFragment(html, baseUrl);
+      return wrap(nodes.toArray(new Node[nodes.size()]), baseUrl);
+    }
+  };
+
+  @Override
+  public String getName() {
+    return name();
+  }
+
+  /**
+   * Moves the nodes into a new {@code <root>} inside a new body.
+   *
+   * @param nodes The parsed nodes
+   * @param baseUrl The base url of the website
+   * @return The body
+   */
+  private static Element wrap(Node[] nodes, String baseUrl) {
+    Element body = new Element(Tag.valueOf("body"), baseUrl);
+    Element root = body.appendElement("root");
+    // removing from the end does not shift the remaining nodes
+    for (int i = nodes.length - 1; i >= 0; i--) {
+      nodes[i].remove();
+    }
+    for (Node node : nodes) {
+      root.appendChild(node);
+    }
+    return body;
+  }
+}
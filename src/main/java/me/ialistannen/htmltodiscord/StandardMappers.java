@@ -1,10 +1,14 @@
 package me.ialistannen.htmltodiscord;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import me.ialistannen.htmltodiscord.util.StringUtils;
 import me.ialistannen.htmltodiscord.util.TableCreator;
 import org.jsoup.nodes.Element;
@@ -42,8 +46,7 @@ public enum StandardMappers implements Mapper {
     @Override
     public String convert(String input, WrappedElement context) {
       // skip code for links
-      if (context.getWrapped().getElementsByTag("a").stream()
-          .anyMatch(element -> element.hasAttr("href"))) {
+      if (context.subtreeContains(SubtreeFlags.LINK_WITH_HREF)) {
         return input;
       }
       if (input.contains("\n")) {
@@ -58,10 +61,7 @@ public enum StandardMappers implements Mapper {
   DESCRIPTION_TAG("dt", html -> html) {
     @Override
     public String convert(String input, WrappedElement context) {
-      if (!context.getWrapped().getElementsByTag("b").isEmpty()
-          || !context.getWrapped().getElementsByTag("strong").isEmpty()
-          || context.getWrapped().getElementsByAttributeValue("class", "strong").stream()
-          .anyMatch(element -> element.tagName().equals("span"))) {
+      if (context.subtreeContains(SubtreeFlags.BOLD)) {
         return "\n" + input;
       }
       return "\n" + BOLD.convert(input);
@@ -76,12 +76,8 @@ public enum StandardMappers implements Mapper {
   DIV("div", html -> "\n" + html),
   FONT("font", html -> html),
   HORIZONTAL_LINE("hr", html -> StringUtils.repeat("-", 20) + html),
-  HEADING("h", (html) -> "\n\n" + ITALIC.convert(BOLD.convert(html)) + "\n") {
-    @Override
-    public boolean matches(String htmlTag) {
-      return htmlTag.matches("h[0-4]");
-    }
-  },
+  HEADING((html) -> "\n\n" + ITALIC.convert(BOLD.convert(html)) + "\n",
+      "h0", "h1", "h2", "h3", "h4"),
   IMAGE("img", html -> html),
   LINE_BREAK("br", html -> "\n" + html),
   LINK("a", html -> html) {
@@ -98,7 +94,7 @@ public enum StandardMappers implements Mapper {
       String target = wrapped.absUrl("href");
       String name = context.getConverterStorage().getReplacement(wrapped);
 
-      if (wrapped.parent().tagName().equals("code")) {
+      if (hasParent(wrapped, "code")) {
         if (wrapped.children().size() > 1) {
           return name;
         }
@@ -107,12 +103,7 @@ public enum StandardMappers implements Mapper {
       return "[" + name + "](" + target.replace(")", "\\)") + ")";
     }
   },
-  LIST("ul", html -> html) {
-    @Override
-    public boolean matches(String htmlTag) {
-      return htmlTag.equalsIgnoreCase("ul") || htmlTag.equalsIgnoreCase("ol");
-    }
-
+  LIST(html -> html, "ul", "ol") {
     @Override
     public String convert(String input, WrappedElement context) {
       StringBuilder builder = new StringBuilder();
@@ -140,7 +131,7 @@ public enum StandardMappers implements Mapper {
   PARAGRAPH("p", html -> "\n" + html) {
     @Override
     public String convert(String input, WrappedElement context) {
-      if (context.getWrapped().parent().tagName().equalsIgnoreCase("li")) {
+      if (hasParent(context.getWrapped(), "li")) {
         return input;
       }
       return "\n" + input;
@@ -191,8 +182,10 @@ public enum StandardMappers implements Mapper {
         Elements cells = element.getElementsByTag("th");
         cells.addAll(element.getElementsByTag("td"));
 
+        boolean header = (context.getConverterStorage().getSubtreeFlags(element)
+            & SubtreeFlags.HEADER_CELL) != 0;
         TableCreator.RowSeparator rowSeparator = length -> {
-          if (element.getElementsByTag("th").isEmpty()) {
+          if (!header) {
             return StringUtils.repeat("-", length);
           }
           return StringUtils.repeat("=", length);
@@ -209,26 +202,46 @@ public enum StandardMappers implements Mapper {
         tableCreator.addLine(rowSeparator, columns);
       }
 
-      return "\n```\n" + tableCreator.build().print() + "\n```\n";
+      ConversionListener listener = context.getMappers().getListener();
+      long start = listener == null ? 0 : System.nanoTime();
+
+      StringBuilder table = new StringBuilder();
+      try {
+        // the cells are laid out decoded, the final unescape of the splice must not change them
+        tableCreator.build().printFenced(
+            table, context.getMappers().getTableRowsPerBlock(), context.isEscaped()
+        );
+      } catch (IOException e) {
+        // a StringBuilder never throws
+        throw new UncheckedIOException(e);
+      }
+
+      if (listener != null) {
+        listener.onPhase(ConversionListener.Phase.TABLE_LAYOUT, System.nanoTime() - start);
+      }
+      return table.toString();
     }
 
     String getText(Element parentElement) {
-      String working = "";
+      StringBuilder working = new StringBuilder();
+      appendText(parentElement, working);
+      return working.toString();
+    }
+
+    private void appendText(Element parentElement, StringBuilder working) {
       for (Node child : parentElement.childNodes()) {
         if (child instanceof TextNode) {
-          working += ((TextNode) child).getWholeText();
+          working.append(((TextNode) child).getWholeText());
         }
         if (child instanceof Element) {
           Element childElement = (Element) child;
           // do more of these for p or other tags you want a new line for
           if (childElement.tag().getName().equalsIgnoreCase("br")) {
-            working += "\n";
+            working.append("\n");
           }
-          working += getText(childElement);
+          appendText(childElement, working);
         }
       }
-
-      return working;
     }
   },
   TABLE_BODY("tbody", html -> html) {
@@ -250,8 +263,7 @@ public enum StandardMappers implements Mapper {
     @Override
     public boolean matches(WrappedElement element) {
       Element wrapped = element.getWrapped();
-      return wrapped.tagName().equalsIgnoreCase("caption") && wrapped.parent().tagName()
-          .equals("table");
+      return wrapped.tagName().equalsIgnoreCase("caption") && hasParent(wrapped, "table");
     }
   },
   TABLE_CELL("td", html -> html),
@@ -260,30 +272,76 @@ public enum StandardMappers implements Mapper {
   UNDERLINE("u", html -> "___" + html + "___"),
   VAR("var", ITALIC::convert);
 
-  private Predicate<String> htmlIdentifier;
-  private Function<String, String> converter;
+  /**
+   * The version of the markdown the standard mappers produce. It is increased whenever their
+   * output changes, so persisted conversions can be invalidated.
+   *
+   * @see PersistentConversionStore
+   */
+  public static final int VERSION = 2;
 
-  StandardMappers(Predicate<String> htmlIdentifier, Function<String, String> converter) {
-    this.htmlIdentifier = htmlIdentifier;
-    this.converter = converter;
-  }
+  private Function<String, String> converter;
+  private Set<String> tags;
 
   StandardMappers(String tag, Function<String, String> converter) {
-    this(s -> s.equalsIgnoreCase(tag), converter);
+    this(converter, tag.isEmpty() ? new String[0] : new String[]{tag});
   }
 
   StandardMappers(Function<String, String> converter, String... tags) {
-    this(s -> Arrays.stream(tags).map(String::toLowerCase).anyMatch(s1 -> s1.equalsIgnoreCase(s)),
-        converter);
+    this.converter = converter;
+    this.tags = tagSet(tags);
   }
 
+  /**
+   * Tags are matched by the lower case name jsoup uses. Other names are lower cased first.
+   */
   @Override
   public boolean matches(String htmlTag) {
-    return htmlIdentifier.test(htmlTag);
+    if (tags.contains(htmlTag)) {
+      return true;
+    }
+    // toLowerCase returns the same instance if the tag already is lower case
+    String lowerCase = htmlTag.toLowerCase(Locale.ROOT);
+    //noinspection StringEquality
+    return lowerCase != htmlTag && tags.contains(lowerCase);
   }
 
   @Override
   public String convert(String input) {
     return converter.apply(input);
   }
+
+  @Override
+  public Set<String> getTags() {
+    return tags;
+  }
+
+  /**
+   * @param tags The tags
+   * @return An immutable set with the interned, lower case tags
+   */
+  private static Set<String> tagSet(String... tags) {
+    if (tags.length == 0) {
+      return Collections.emptySet();
+    }
+    if (tags.length == 1) {
+      return Collections.singleton(tags[0].toLowerCase(Locale.ROOT).intern());
+    }
+    Set<String> set = new HashSet<>();
+    for (String tag : tags) {
+      set.add(tag.toLowerCase(Locale.ROOT).intern());
+    }
+    return Collections.unmodifiableSet(set);
+  }
+
+  /**
+   * @param element The element
+   * @param tag The tag of the parent
+   * @return True if the element has a parent with the given tag. Elements converted in place may
+   * have no parent.
+   */
+  private static boolean hasParent(Element element, String tag) {
+    Element parent = element.parent();
+    return parent != null && parent.tagName().equalsIgnoreCase(tag);
+  }
 }
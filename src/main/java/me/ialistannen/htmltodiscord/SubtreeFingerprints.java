@@ -0,0 +1,246 @@
+package me.ialistannen.htmltodiscord;
+
+import java.util.Arrays;
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+
+/**
+ * Computes the fingerprints of all element subtrees for the {@link FragmentCache}.
+ * <p>
+ * The fingerprint of an element covers its tag, its attributes, the tag of its parent, its base
+ * url and all of its child nodes (using the fingerprints of child elements). It is computed
+ * bottom-up in a single pass and consists of two independent 64 bit lanes. Whether unknown tags
+ * are silently ignored is part of the seed, as it decides whether a subtree converts at all.
+ */
+class SubtreeFingerprints {
+
+  private static final long HIGH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+  private static final long LOW_MULTIPLIER = 0xC2B2AE3D27D4EB4FL;
+
+  private static final int ELEMENT = 1;
+  private static final int TEXT = 2;
+  private static final int COMMENT = 3;
+  private static final int DATA = 4;
+  private static final int OTHER = 5;
+  private static final int END = 6;
+
+  /**
+   * The high and low lane of every element, by id
+   */
+  private long[] lanes = new long[64];
+  private boolean[] childElements = new boolean[32];
+  private int[] parents = new int[16];
+
+  private long seed;
+  private long high;
+  private long low;
+
+  private String lastBaseUri;
+  private long baseHigh;
+  private long baseLow;
+
+  /**
+   * @param silentlyIgnoreUnknownTags Whether the markdown is converted with unknown tags ignored
+   */
+  SubtreeFingerprints(boolean silentlyIgnoreUnknownTags) {
+    this.seed = silentlyIgnoreUnknownTags ? 1 : 2;
+  }
+
+  /**
+   * Computes the fingerprints of the root and all of its descendants. Every element is checked
+   * against the limits before it is hashed, so a document that is too big is rejected early and
+   * regardless of which of its subtrees are cached later.
+   *
+   * @param root The root element
+   * @param index The {@link ElementIndex} to number the elements with
+   * @param limits The {@link ConversionLimits} to check the elements against
+   * @param elementCount The amount of elements counted before the root
+   * @param depthOffset The depth of the root
+   * @return The amount of elements counted, including the root and its descendants
+   * @throws ConversionLimitException if an element exceeds a limit
+   */
+  int compute(Element root, ElementIndex index, ConversionLimits limits, int elementCount,
+      int depthOffset) {
+    Node node = root;
+    int depth = 0;
+    while (node != null) {
+      if (node instanceof Element) {
+        elementCount++;
+        limits.check(elementCount, depth + depthOffset);
+        startElement((Element) node, index.register((Element) node), depth);
+      } else if (depth > 0) {
+        addLeaf(node, parents[depth - 1]);
+      }
+
+      if (node.childNodeSize() > 0) {
+        node = node.childNode(0);
+        depth++;
+        continue;
+      }
+
+      while (node.nextSibling() == null && depth > 0) {
+        endElement(node, depth);
+        node = node.parentNode();
+        depth--;
+      }
+      endElement(node, depth);
+      if (node == root) {
+        break;
+      }
+      node = node.nextSibling();
+    }
+    return elementCount;
+  }
+
+  /**
+   * @param id The id of the element
+   * @return The high lane of the fingerprint
+   */
+  long getHigh(int id) {
+    return lanes[id * 2];
+  }
+
+  /**
+   * @param id The id of the element
+   * @return The low lane of the fingerprint
+   */
+  long getLow(int id) {
+    return lanes[id * 2 + 1];
+  }
+
+  /**
+   * @param id The id of the element
+   * @return True if the element has at least one child element
+   */
+  boolean hasChildElements(int id) {
+    return childElements[id];
+  }
+
+  /**
+   * @return The amount of elements the fingerprints can be stored for without growing
+   */
+  int getCapacity() {
+    return lanes.length / 2;
+  }
+
+  private void startElement(Element element, int id, int depth) {
+    if (id * 2 + 1 >= lanes.length) {
+      lanes = Arrays.copyOf(lanes, Math.max(lanes.length * 2, id * 2 + 2));
+      childElements = Arrays.copyOf(childElements, lanes.length / 2);
+    }
+    if (depth >= parents.length) {
+      parents = Arrays.copyOf(parents, parents.length * 2);
+    }
+    parents[depth] = id;
+    childElements[id] = false;
+
+    high = seed;
+    low = seed;
+    add(ELEMENT);
+    add(element.tagName());
+    for (Attribute attribute : element.attributes()) {
+      add(attribute.getKey());
+      add(attribute.getValue());
+    }
+    Element parent = element.parent();
+    add(parent == null ? "" : parent.tagName());
+
+    String baseUri = element.baseUri();
+    if (baseUri != lastBaseUri) {
+      long elementHigh = high;
+      long elementLow = low;
+      high = 0;
+      low = 0;
+      add(baseUri);
+      baseHigh = high;
+      baseLow = low;
+      lastBaseUri = baseUri;
+      high = elementHigh;
+      low = elementLow;
+    }
+    add(baseHigh);
+    add(baseLow);
+
+    lanes[id * 2] = high;
+    lanes[id * 2 + 1] = low;
+  }
+
+  private void endElement(Node node, int depth) {
+    if (!(node instanceof Element)) {
+      return;
+    }
+    int id = parents[depth];
+    high = lanes[id * 2];
+    low = lanes[id * 2 + 1];
+    add(END);
+    lanes[id * 2] = high;
+    lanes[id * 2 + 1] = low;
+
+    if (depth > 0) {
+      int parent = parents[depth - 1];
+      childElements[parent] = true;
+      fold(parent, lanes[id * 2], lanes[id * 2 + 1]);
+    }
+  }
+
+  private void addLeaf(Node node, int parent) {
+    high = seed;
+    low = seed;
+    if (node instanceof TextNode) {
+      add(TEXT);
+      add(((TextNode) node).getWholeText());
+    } else if (node instanceof Comment) {
+      add(COMMENT);
+      add(((Comment) node).getData());
+    } else if (node instanceof DataNode) {
+      add(DATA);
+      add(((DataNode) node).getWholeData());
+    } else {
+      add(OTHER);
+      add(node.outerHtml());
+    }
+    fold(parent, high, low);
+  }
+
+  /**
+   * Adds the fingerprint of a child node to its parent.
+   */
+  private void fold(int parent, long childHigh, long childLow) {
+    high = lanes[parent * 2];
+    low = lanes[parent * 2 + 1];
+    add(childHigh);
+    add(childLow);
+    lanes[parent * 2] = high;
+    lanes[parent * 2 + 1] = low;
+  }
+
+  private void add(String string) {
+    add(string.length());
+    int i = 0;
+    for (; i + 4 <= string.length(); i += 4) {
+      add(string.charAt(i)
+          | (long) string.charAt(i + 1) << 16
+          | (long) string.charAt(i + 2) << 32
+          | (long) string.charAt(i + 3) << 48);
+    }
+    long rest = 0;
+    for (int shift = 0; i < string.length(); i++, shift += 16) {
+      rest |= (long) string.charAt(i) << shift;
+    }
+    add(rest);
+  }
+
+  private void add(long value) {
+    high ^= value;
+    high *= HIGH_MULTIPLIER;
+    high ^= high >>> 32;
+
+    low = Long.rotateLeft(low, 27) ^ value;
+    low *= LOW_MULTIPLIER;
+    low ^= low >>> 29;
+  }
+}
@@ -0,0 +1,67 @@
+package me.ialistannen.htmltodiscord;
+
+import org.jsoup.nodes.Element;
+
+/**
+ * Facts about the subtree of an element that the {@link StandardMappers} need, stored as bit
+ * flags.
+ * <p>
+ * The flags of an element are its own flags combined with the flags of all of its children. They
+ * are computed bottom-up while converting, so no mapper needs to scan a subtree.
+ */
+final class SubtreeFlags {
+
+  /**
+   * The subtree contains an {@code a} element with a {@code href}
+   */
+  static final int LINK_WITH_HREF = 1;
+  /**
+   * The subtree contains a {@code b}, a {@code strong} or a {@code span} with the class
+   * {@code strong}
+   */
+  static final int BOLD = 1 << 1;
+  /**
+   * The subtree contains a {@code th}
+   */
+  static final int HEADER_CELL = 1 << 2;
+
+  private SubtreeFlags() {
+  }
+
+  /**
+   * @param element The element
+   * @return The flags of the element alone, without its children
+   */
+  static int of(Element element) {
+    switch (element.tagName()) {
+      case "a":
+        return element.hasAttr("href") ? LINK_WITH_HREF : 0;
+      case "b":
+      case "strong":
+        return BOLD;
+      case "span":
+        return element.hasAttr("class") && element.attr("class").trim().equalsIgnoreCase("strong")
+            ? BOLD
+            : 0;
+      case "th":
+        return HEADER_CELL;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Computes the flags of the whole subtree by visiting every element in it. Only used if the
+   * flags were not computed while converting.
+   *
+   * @param element The root of the subtree
+   * @return The flags of the subtree
+   */
+  static int scan(Element element) {
+    int flags = 0;
+    for (Element descendant : element.getAllElements()) {
+      flags |= of(descendant);
+    }
+    return flags;
+  }
+}
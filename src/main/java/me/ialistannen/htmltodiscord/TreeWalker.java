@@ -0,0 +1,815 @@
+package me.ialistannen.htmltodiscord;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.jsoup.nodes.Comment;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Tag;
+import org.jsoup.select.NodeTraversor;
+import org.jsoup.select.NodeVisitor;
+
+/**
+ * The {@link ConversionEngine#TREE_WALK} engine.
+ * <p>
+ * Every element is converted once, after all of its children (post order). Its content is built
+ * from the text of its child nodes and the stored replacements of its child elements, exactly
+ * like the regex splice in {@link WrappedElement#getReplacedContent()} would, but without
+ * serializing anything back to HTML.
+ * <p>
+ * The content is built in two steps:
+ * <ol>
+ * <li>The <em>skeleton</em>: The inner HTML the splice would see, with every child element
+ * collapsed to a single {@code '<'}. The same cleanups (trimming and the removal of line feeds
+ * before tags) are applied to it.</li>
+ * <li>The <em>output</em>: The skeleton with the replacement of every child element inserted at
+ * its slot.</li>
+ * </ol>
+ * <p>
+ * Text is taken from the {@link TextNode}s already decoded and copied to the output once. It is
+ * never escaped, so the markdown does not need to be unescaped afterwards. Text that only looks
+ * like an entity after decoding (e.g. {@code &amp;lt;}) therefore stays as it is.
+ * <p>
+ * The walker can also {@link #startStream(Element) stream} the root, writing the markdown
+ * of every top level block as soon as it is converted. In that mode the replacement of every
+ * element is dropped once its parent is done.
+ * A {@link BlockStore} can supply the markdown of top level blocks that were converted before.
+ * <p>
+ * If a {@link FragmentCache} is set, the fingerprints of all subtrees are computed first. Elements
+ * whose markdown is cached are then skipped together with their descendants.
+ */
+class TreeWalker implements NodeVisitor {
+
+  /**
+   * The amount of elements a walker may be sized for and still be worth keeping
+   */
+  private static final int RETAINED_ELEMENTS = 1 << 13;
+  /**
+   * The amount of characters the builders of a walker may hold and still be worth keeping
+   */
+  private static final int RETAINED_CHARACTERS = 1 << 18;
+
+  private ConverterStorage converterStorage;
+  private ElementIndex index;
+  private MapperCollection mappers;
+  private ContextMetadata metadata;
+  private boolean silentlyIgnoreUnknownTags;
+
+  private StringBuilder skeleton = new StringBuilder();
+  private StringBuilder output = new StringBuilder();
+  private int[] slots = new int[16];
+  private int[] slotIds = new int[16];
+  private int slotCount;
+
+  private boolean inUse;
+  private boolean streaming;
+
+  private FragmentCache fragmentCache;
+  private SubtreeFingerprints fingerprints;
+
+  private ConversionLimits limits = ConversionLimits.NONE;
+  private int elementCount;
+  private int depthOffset;
+
+  private BlockStore blockStore;
+
+  /**
+   * @param converterStorage The {@link ConverterStorage} to save the replacements in
+   * @param mappers The {@link Mapper}s to use
+   * @param metadata The {@link ContextMetadata} to pass to the mappers
+   * @param silentlyIgnoreUnknownTags Whether to silently ignore unknown tags
+   */
+  TreeWalker(ConverterStorage converterStorage, MapperCollection mappers,
+      ContextMetadata metadata, boolean silentlyIgnoreUnknownTags) {
+    this.converterStorage = converterStorage;
+    this.index = converterStorage.getIndex();
+    this.mappers = mappers;
+    this.metadata = metadata;
+    this.silentlyIgnoreUnknownTags = silentlyIgnoreUnknownTags;
+  }
+
+  /**
+   * Creates a walker with its own storage, that can be {@link #reset()} and reused.
+   *
+   * @param mappers The {@link Mapper}s to use
+   * @param silentlyIgnoreUnknownTags Whether to silently ignore unknown tags
+   */
+  TreeWalker(MapperCollection mappers, boolean silentlyIgnoreUnknownTags) {
+    this(new ConverterStorage(), mappers, null, silentlyIgnoreUnknownTags);
+    this.metadata = new ContextMetadata(index);
+  }
+
+  /**
+   * Converts all children of the body of a parsed document.
+   *
+   * @param body The body of the document
+   * @return The replacement of the last child, which is the root
+   */
+  String convertBody(Element body) {
+    elementCount = 0;
+    depthOffset = 1;
+
+    String result = "";
+    for (Element child : body.children()) {
+      result = convert(child);
+    }
+    return result;
+  }
+
+  /**
+   * Converts all children of the body of a parsed document and streams the last one, which is
+   * the root.
+   *
+   * @param body The body of the document
+   * @param out The {@link Appendable} to write the markdown to
+   * @throws IOException if writing fails
+   * @see #startStream(Element)
+   */
+  void streamBody(Element body, Appendable out) throws IOException {
+    RootStream stream = startBody(body);
+    if (stream != null) {
+      while (streamNext(stream, out)) {
+        // every call writes one block
+      }
+    }
+  }
+
+  /**
+   * Converts all children of the body of a parsed document but the last one, which is the root,
+   * and prepares to stream the root.
+   *
+   * @param body The body of the document
+   * @return The {@link RootStream} for the root or null if the body is empty
+   * @see #startStream(Element)
+   */
+  RootStream startBody(Element body) {
+    elementCount = 0;
+    depthOffset = 1;
+
+    int childCount = body.children().size();
+    for (int i = 0; i < childCount - 1; i++) {
+      convert(body.child(i));
+      reset();
+    }
+    if (childCount == 0) {
+      return null;
+    }
+    return startStream(body.child(childCount - 1));
+  }
+
+  /**
+   * Prepares to stream the root.
+   * <p>
+   * The root is assembled like every other element, but the markdown of each top level child is
+   * written (and forgotten) as soon as the child is converted. Only the text between the last
+   * child and the next one is buffered. This requires the root to be mapped by {@link
+   * StandardMappers#ROOT}, otherwise the root is converted as a whole and then written.
+   * <p>
+   * All state of the stream is kept in the returned {@link RootStream}, so it can be continued
+   * later by any walker with the same mappers and limits.
+   *
+   * @param root The root element
+   * @return The {@link RootStream} to pass to {@link #streamNext(RootStream, Appendable)}
+   */
+  RootStream startStream(Element root) {
+    return startStream(root, root.childNodes(), false);
+  }
+
+  /**
+   * Prepares to stream nodes that already belong to a document, without moving or copying them.
+   * The nodes are treated as the children of a new, empty root.
+   *
+   * @param nodes The nodes to convert
+   * @param baseUri The base uri of the new root
+   * @return The {@link RootStream} to pass to {@link #streamNext(RootStream, Appendable)}
+   * @see #startStream(Element)
+   */
+  RootStream startVirtualStream(List<? extends Node> nodes, String baseUri) {
+    elementCount = 0;
+    depthOffset = 1;
+    return startStream(new Element(Tag.valueOf("root"), baseUri), nodes, true);
+  }
+
+  /**
+   * @param root The root element
+   * @param children The children of the root
+   * @param virtual Whether the children do not really belong to the root
+   * @return The {@link RootStream} to pass to {@link #streamNext(RootStream, Appendable)}
+   */
+  private RootStream startStream(Element root, List<? extends Node> children, boolean virtual) {
+    try {
+      WrappedElement wrappedRoot = new WrappedElement(
+          root, index.register(root), converterStorage, mappers, metadata,
+          silentlyIgnoreUnknownTags
+      );
+      boolean mappedByRoot = mappers.findMapper(wrappedRoot) == StandardMappers.ROOT;
+      if (mappedByRoot) {
+        // the root is not traversed, its children are
+        countElement(depthOffset);
+      } else if (virtual) {
+        // the root is converted as a whole, so it needs real children
+        for (Node child : children) {
+          root.appendChild(child.clone());
+        }
+      }
+      return new RootStream(
+          root, children, mappedByRoot, !preservesWhitespace(root), elementCount
+      );
+    } finally {
+      reset();
+    }
+  }
+
+  /**
+   * Converts the next top level block of the root and writes it, together with the text before
+   * it, to the {@link Appendable}. The text after the last block is written by the last call.
+   *
+   * @param stream The {@link RootStream} to continue
+   * @param out The {@link Appendable} to write the markdown to
+   * @return False if the stream was already finished and nothing was written
+   * @throws IOException if writing fails
+   */
+  boolean streamNext(RootStream stream, Appendable out) throws IOException {
+    if (stream.finished) {
+      return false;
+    }
+    streaming = true;
+    elementCount = stream.elementCount;
+    depthOffset = stream.mappedByRoot ? 2 : 1;
+    try {
+      if (!stream.mappedByRoot) {
+        out.append(convert(stream.root));
+        reset();
+        stream.finished = true;
+        return true;
+      }
+
+      StringBuilder pending = stream.pending;
+      while (stream.nextChild < stream.children.size()) {
+        Node child = stream.children.get(stream.nextChild++);
+        if (!(child instanceof Element)) {
+          appendNode(pending, child, stream.normaliseWhitespace);
+          continue;
+        }
+
+        String markdown = convertBlock((Element) child);
+
+        removeLinefeedsBeforeTag(pending);
+        int start = 0;
+        if (stream.afterSlot) {
+          // the previous child is followed by this one or some text, so it is never at the end
+          start = 1;
+          int next = pending.length() > 1 ? Character.codePointAt(pending, 1) : '<';
+          if (!Character.isWhitespace(next)) {
+            out.append(' ');
+          }
+        } else {
+          while (start < pending.length() && pending.charAt(start) <= ' ') {
+            start++;
+          }
+        }
+        out.append(pending, start, pending.length());
+        out.append(markdown);
+
+        pending.setLength(0);
+        pending.append('<');
+        stream.afterSlot = true;
+        return true;
+      }
+
+      int from = stream.afterSlot ? 1 : 0;
+      int to = pending.length();
+      while (to > from && pending.charAt(to - 1) <= ' ') {
+        to--;
+      }
+      if (stream.afterSlot) {
+        if (separatesFromNext(pending, 0, to, false)) {
+          out.append(' ');
+        }
+      } else {
+        while (from < to && pending.charAt(from) <= ' ') {
+          from++;
+        }
+      }
+      out.append(pending, from, to);
+      pending.setLength(0);
+      stream.finished = true;
+      return true;
+    } finally {
+      stream.elementCount = elementCount;
+      streaming = false;
+      depthOffset = 1;
+    }
+  }
+
+  /**
+   * Converts a top level block of a streamed root or takes its markdown from the {@link
+   * BlockStore}.
+   *
+   * @param block The top level block
+   * @return The markdown of the block
+   */
+  private String convertBlock(Element block) {
+    String markdown = blockStore == null ? null : blockStore.get(block);
+    if (markdown == null) {
+      markdown = convert(block);
+      reset();
+      if (blockStore != null) {
+        blockStore.put(block, markdown);
+      }
+    } else {
+      countElements(block);
+    }
+    return markdown;
+  }
+
+  /**
+   * Counts the elements of a block that is not converted, so the limits do not depend on which
+   * blocks were converted before.
+   *
+   * @param block The top level block
+   */
+  private void countElements(Element block) {
+    Node node = block;
+    int depth = 0;
+    while (node != null) {
+      if (node instanceof Element) {
+        countElement(depth + depthOffset);
+      }
+      if (node.childNodeSize() > 0) {
+        node = node.childNode(0);
+        depth++;
+        continue;
+      }
+      while (node.nextSibling() == null && depth > 0) {
+        node = node.parentNode();
+        depth--;
+      }
+      if (node == block) {
+        break;
+      }
+      node = node.nextSibling();
+    }
+  }
+
+  /**
+   * @param blockStore The {@link BlockStore} for the top level blocks of a streamed root or null
+   * to convert every block
+   */
+  void setBlockStore(BlockStore blockStore) {
+    this.blockStore = blockStore;
+  }
+
+  /**
+   * Forgets everything about the last conversion. Takes time proportional to the amount of
+   * elements converted since the last reset, so it is cheap enough to call after every streamed
+   * block.
+   */
+  void reset() {
+    converterStorage.clear();
+    metadata.clear();
+  }
+
+  /**
+   * Checks whether a conversion grew the buffers of this walker far beyond what a typical
+   * document needs. Such a walker should not be pooled, as it keeps them until it is discarded.
+   *
+   * @return True if the buffers of this walker are too big to keep around
+   */
+  boolean isOversized() {
+    return converterStorage.getCapacity() > RETAINED_ELEMENTS
+        || slots.length > RETAINED_ELEMENTS
+        || fingerprints != null && fingerprints.getCapacity() > RETAINED_ELEMENTS
+        || skeleton.capacity() > RETAINED_CHARACTERS
+        || output.capacity() > RETAINED_CHARACTERS;
+  }
+
+  /**
+   * @return True if this walker is currently converting a document
+   */
+  boolean isInUse() {
+    return inUse;
+  }
+
+  /**
+   * @param inUse Whether this walker is currently converting a document
+   */
+  void setInUse(boolean inUse) {
+    this.inUse = inUse;
+  }
+
+  /**
+   * @param limits The {@link ConversionLimits} for the documents
+   */
+  void setLimits(ConversionLimits limits) {
+    this.limits = limits;
+  }
+
+  /**
+   * Counts an element and checks the limits.
+   *
+   * @param depth The depth of the element
+   * @throws ConversionLimitException if a limit is exceeded
+   */
+  private void countElement(int depth) {
+    elementCount++;
+    limits.check(elementCount, depth);
+  }
+
+  /**
+   * @param fragmentCache The {@link FragmentCache} to use or null to convert every element
+   */
+  void setFragmentCache(FragmentCache fragmentCache) {
+    this.fragmentCache = fragmentCache;
+    if (fragmentCache != null && fingerprints == null) {
+      fingerprints = new SubtreeFingerprints(silentlyIgnoreUnknownTags);
+    }
+  }
+
+  /**
+   * Converts the given element and all of its descendants.
+   *
+   * @param root The element to convert
+   * @return The converted element
+   */
+  String convert(Element root) {
+    if (fragmentCache == null) {
+      new NodeTraversor(this).traverse(root);
+    } else {
+      // cached subtrees are skipped later, so all elements are counted here
+      elementCount = fingerprints.compute(root, index, limits, elementCount, depthOffset);
+      traverseUncached(root);
+    }
+    return converterStorage.getReplacement(index.getId(root));
+  }
+
+  /**
+   * Traverses the root like a {@link NodeTraversor}, but skips elements whose markdown is cached.
+   *
+   * @param root The root element
+   */
+  private void traverseUncached(Element root) {
+    Node node = root;
+    int depth = 0;
+    while (node != null) {
+      head(node, depth);
+      boolean cached = node instanceof Element && restoreFromCache((Element) node);
+      if (!cached && node.childNodeSize() > 0) {
+        node = node.childNode(0);
+        depth++;
+        continue;
+      }
+
+      // a cached element is already converted
+      boolean skipTail = cached;
+      while (node.nextSibling() == null && depth > 0) {
+        if (!skipTail) {
+          tail(node, depth);
+        }
+        skipTail = false;
+        node = node.parentNode();
+        depth--;
+      }
+      if (!skipTail) {
+        tail(node, depth);
+      }
+      if (node == root) {
+        break;
+      }
+      node = node.nextSibling();
+    }
+  }
+
+  /**
+   * Uses the cached markdown of the element, if there is any.
+   *
+   * @param element The element
+   * @return True if the markdown was cached
+   */
+  private boolean restoreFromCache(Element element) {
+    int id = index.getId(element);
+    if (!fingerprints.hasChildElements(id)) {
+      return false;
+    }
+    FragmentCache.Fragment fragment = fragmentCache.get(
+        fingerprints.getHigh(id), fingerprints.getLow(id)
+    );
+    if (fragment == null) {
+      return false;
+    }
+    converterStorage.setReplacement(id, fragment.getMarkdown());
+    converterStorage.setSubtreeFlags(id, fragment.getSubtreeFlags());
+    return true;
+  }
+
+  @Override
+  public void head(Node node, int depth) {
+    // Elements are numbered in document order, but converted once their children are done
+    if (node instanceof Element) {
+      if (fragmentCache == null) {
+        countElement(depth + depthOffset);
+      }
+      index.register((Element) node);
+    }
+  }
+
+  @Override
+  public void tail(Node node, int depth) {
+    if (node instanceof Element) {
+      Element element = (Element) node;
+      int id = index.getId(element);
+      String content = assembleContent(element);
+      String markdown = new WrappedElement(
+          element, id, converterStorage, mappers, metadata, silentlyIgnoreUnknownTags
+      ).convertContent(content, childFlags());
+
+      // elements without child elements are cheaper to convert than to look up
+      if (fragmentCache != null && fingerprints.hasChildElements(id)) {
+        fragmentCache.put(
+            fingerprints.getHigh(id), fingerprints.getLow(id), markdown,
+            converterStorage.getSubtreeFlags(id)
+        );
+      }
+
+      if (streaming) {
+        // the parent is done, nobody will read the children again
+        for (int i = 0; i < slotCount; i++) {
+          converterStorage.setReplacement(slotIds[i], null);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The combined {@link SubtreeFlags} of the children in the current slots
+   */
+  private int childFlags() {
+    int flags = 0;
+    for (int i = 0; i < slotCount; i++) {
+      int childFlags = converterStorage.getSubtreeFlags(slotIds[i]);
+      flags |= childFlags < 0 ? SubtreeFlags.scan(index.getElement(slotIds[i])) : childFlags;
+    }
+    return flags;
+  }
+
+  /**
+   * Builds the content of an element from its (already converted) children.
+   *
+   * @param element The element to build the content for
+   * @return The content of the element, before its own mapper is applied
+   */
+  private String assembleContent(Element element) {
+    buildSkeleton(element);
+
+    int from = 0;
+    int to = skeleton.length();
+    while (from < to && skeleton.charAt(from) <= ' ') {
+      from++;
+    }
+    while (to > from && skeleton.charAt(to - 1) <= ' ') {
+      to--;
+    }
+
+    output.setLength(0);
+    int position = from;
+    for (int i = 0; i < slotCount; i++) {
+      int slot = slots[i];
+      output.append(skeleton, position, slot);
+      output.append(converterStorage.getReplacement(slotIds[i]));
+
+      boolean nextIsSlot = i + 1 < slotCount && slots[i + 1] == slot + 1;
+      if (separatesFromNext(skeleton, slot, to, nextIsSlot)) {
+        output.append(' ');
+      }
+      position = slot + 1;
+    }
+    output.append(skeleton, position, to);
+
+    return output.toString();
+  }
+
+  /**
+   * Checks whether the splice would put a space after the child in the slot.
+   * <p>
+   * It does, if the following character is no whitespace and there are at least two more
+   * characters of HTML. A slot stands for a whole tag and a character jsoup would escape for an
+   * entity, so both always count as enough.
+   *
+   * @param skeleton The skeleton the slot is in
+   * @param slot The index of the slot
+   * @param to The end of the trimmed skeleton
+   * @param nextIsSlot Whether the slot is directly followed by another slot
+   * @return True if a space needs to be inserted after the replacement of the child
+   */
+  private boolean separatesFromNext(CharSequence skeleton, int slot, int to, boolean nextIsSlot) {
+    int rest = to - slot - 1;
+    if (rest <= 0) {
+      return false;
+    }
+    char next = skeleton.charAt(slot + 1);
+    if (rest == 1 && !nextIsSlot && !isEscapedAsEntity(next)) {
+      return false;
+    }
+    return !Character.isWhitespace(Character.codePointAt(skeleton, slot + 1));
+  }
+
+  /**
+   * Builds the skeleton of the element, which is its inner HTML with every child element
+   * collapsed to one {@code '<'} slot.
+   *
+   * @param element The element to build it for
+   */
+  private void buildSkeleton(Element element) {
+    skeleton.setLength(0);
+    slotCount = 0;
+
+    boolean normaliseWhitespace = !preservesWhitespace(element);
+
+    for (Node child : element.childNodes()) {
+      if (child instanceof Element) {
+        addSlot((Element) child);
+      } else {
+        appendNode(skeleton, child, normaliseWhitespace);
+      }
+    }
+  }
+
+  /**
+   * Appends a node, that is not an element, to a skeleton.
+   *
+   * @param target The skeleton to append to
+   * @param node The node to append
+   * @param normaliseWhitespace Whether to collapse whitespace runs in text into a single space
+   */
+  private void appendNode(StringBuilder target, Node node, boolean normaliseWhitespace) {
+    if (node instanceof TextNode) {
+      appendText(target, ((TextNode) node).getWholeText(), normaliseWhitespace);
+    } else if (node instanceof Comment) {
+      appendMarkup(target, "<!--" + ((Comment) node).getData() + "-->");
+    } else if (node instanceof DataNode) {
+      appendMarkup(target, ((DataNode) node).getWholeData());
+    } else {
+      appendMarkup(target, node.outerHtml());
+    }
+  }
+
+  /**
+   * @param element The element to add a slot for
+   */
+  private void addSlot(Element element) {
+    if (slotCount == slots.length) {
+      slots = Arrays.copyOf(slots, slotCount * 2);
+      slotIds = Arrays.copyOf(slotIds, slotCount * 2);
+    }
+    removeLinefeedsBeforeTag(skeleton);
+    slots[slotCount] = skeleton.length();
+    slotIds[slotCount] = index.getId(element);
+    slotCount++;
+    skeleton.append('<');
+  }
+
+  /**
+   * Appends markup that is not escaped, applying the line feed cleanup before every tag.
+   *
+   * @param target The skeleton to append to
+   * @param markup The markup to append
+   */
+  private void appendMarkup(StringBuilder target, String markup) {
+    for (int i = 0; i < markup.length(); i++) {
+      char c = markup.charAt(i);
+      if (c == '<') {
+        removeLinefeedsBeforeTag(target);
+      }
+      target.append(c);
+    }
+  }
+
+  /**
+   * Removes the line feed and all whitespace after it, if they directly precede the tag that is
+   * about to be appended. Mirrors {@code replaceAll("(\n|\r\n|\r)\\s*<", "<")}.
+   *
+   * @param skeleton The skeleton the tag is appended to
+   */
+  private void removeLinefeedsBeforeTag(StringBuilder skeleton) {
+    int cut = -1;
+    for (int i = skeleton.length() - 1; i >= 0; i--) {
+      char c = skeleton.charAt(i);
+      if (c == '\n' || c == '\r') {
+        cut = i;
+      } else if (c != ' ' && c != '\t' && c != '\u000B' && c != '\f') {
+        break;
+      }
+    }
+    if (cut >= 0) {
+      skeleton.setLength(cut);
+    }
+  }
+
+  /**
+   * Appends the decoded text, with the whitespace handling of jsoup's serializer.
+   *
+   * @param skeleton The skeleton to append to
+   * @param text The text to append
+   * @param normaliseWhitespace Whether to collapse whitespace runs into a single space
+   */
+  private void appendText(StringBuilder skeleton, String text, boolean normaliseWhitespace) {
+    boolean lastWasWhite = false;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+
+      if (normaliseWhitespace) {
+        if (c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r') {
+          if (!lastWasWhite) {
+            skeleton.append(' ');
+            lastWasWhite = true;
+          }
+          continue;
+        }
+        lastWasWhite = false;
+      }
+
+      skeleton.append(c);
+    }
+  }
+
+  /**
+   * @param c The character to check
+   * @return True if jsoup escapes the character in text as an entity
+   */
+  private static boolean isEscapedAsEntity(char c) {
+    return c == '&' || c == '\u00A0' || c == '<' || c == '>';
+  }
+
+  /**
+   * @param element The element to check
+   * @return True if jsoup keeps the whitespace of text in this element
+   */
+  private static boolean preservesWhitespace(Element element) {
+    return element.tag().preserveWhitespace()
+        || element.parent() != null && element.parent().tag().preserveWhitespace();
+  }
+
+  /**
+   * Remembers the markdown of the top level blocks of a {@link #startStream(Element)
+   * streamed} root, so unchanged blocks need not be converted again.
+   */
+  interface BlockStore {
+
+    /**
+     * @param block The top level block
+     * @return The markdown of the block or null if it needs to be converted
+     */
+    String get(Element block);
+
+    /**
+     * @param block The top level block that was just converted
+     * @param markdown The markdown of the block
+     */
+    void put(Element block, String markdown);
+  }
+
+  /**
+   * The state of a streamed root, between two top level blocks
+   */
+  static class RootStream {
+
+    private final Element root;
+    private final List<? extends Node> children;
+    private final boolean mappedByRoot;
+    private final boolean normaliseWhitespace;
+    /**
+     * The text after the last block, with the last block collapsed to a {@code '<'}
+     */
+    private final StringBuilder pending = new StringBuilder();
+    private int nextChild;
+    private boolean afterSlot;
+    private boolean finished;
+    private int elementCount;
+
+    /**
+     * @param root The root element
+     * @param children The children of the root
+     * @param mappedByRoot Whether the root is mapped by {@link StandardMappers#ROOT}
+     * @param normaliseWhitespace Whether whitespace in the text of the root is normalised
+     * @param elementCount The amount of elements counted so far
+     */
+    private RootStream(Element root, List<? extends Node> children, boolean mappedByRoot,
+        boolean normaliseWhitespace, int elementCount) {
+      this.root = root;
+      this.children = children;
+      this.mappedByRoot = mappedByRoot;
+      this.normaliseWhitespace = normaliseWhitespace;
+      this.elementCount = elementCount;
+    }
+
+    /**
+     * @return True if everything was written
+     */
+    boolean isFinished() {
+      return finished;
+    }
+  }
+}
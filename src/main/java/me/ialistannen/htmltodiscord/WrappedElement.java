@@ -1,9 +1,7 @@
 package me.ialistannen.htmltodiscord;
 
-import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
 
 /**
  * A wrapped element
@@ -14,13 +12,33 @@ public class WrappedElement {
   private MapperCollection mappers;
   private ContextMetadata metadata;
   private Element wrapped;
+  private int id;
 
   private boolean silentlyIgnoreUnknownTags;
+  private boolean escaped;
 
   public WrappedElement(Element element, ConverterStorage converterStorage,
       MapperCollection mappers, ContextMetadata metadata,
       boolean silentlyIgnoreUnknownTags) {
+    this(
+        element, converterStorage.getIndex().register(element), converterStorage, mappers,
+        metadata, silentlyIgnoreUnknownTags
+    );
+  }
+
+  /**
+   * @param element The element to wrap
+   * @param id The id the {@link ElementIndex} of the storage assigned to the element
+   * @param converterStorage The {@link ConverterStorage}
+   * @param mappers The {@link MapperCollection}
+   * @param metadata The {@link ContextMetadata}
+   * @param silentlyIgnoreUnknownTags Whether to silently ignore unknown tags
+   */
+  WrappedElement(Element element, int id, ConverterStorage converterStorage,
+      MapperCollection mappers, ContextMetadata metadata,
+      boolean silentlyIgnoreUnknownTags) {
     this.wrapped = element;
+    this.id = id;
     this.converterStorage = converterStorage;
     this.mappers = mappers;
     this.metadata = metadata;
@@ -47,48 +65,138 @@ public class WrappedElement {
   }
 
   public String getReplacedContent() {
-    String html = wrapped.html();
     // replace artificial new lines before tags
-    html = cleanupHtmlTagLinefeeds(html);
+    StringBuilder html = new StringBuilder(cleanupHtmlTagLinefeeds(wrapped.html()));
 
-    for (int i = 0; i < wrapped.children().size(); i++) {
-      Element child = wrapped.child(i);
+    int childFlags = 0;
+    Elements children = wrapped.children();
+    for (Element child : children) {
+      childFlags |= converterStorage.getSubtreeFlags(child);
 
-      Matcher matcher = Pattern.compile(
-          Pattern.quote(
-              cleanupHtmlTagLinefeeds(child.outerHtml())
-          )
-      ).matcher(html);
+      String childHtml = cleanupHtmlTagLinefeeds(child.outerHtml());
 
-      if (matcher.find()) {
-        String replacement = converterStorage.getReplacement(child);
+      int start = html.indexOf(childHtml);
+      if (start < 0) {
+        continue;
+      }
+      int end = start + childHtml.length();
 
-        if (matcher.end() < html.length() - 1) {
-          int character = html.codePointAt(matcher.end());
-          if (!Character.isWhitespace(character)) {
-            replacement += " ";
-          }
+      String replacement = converterStorage.getReplacement(child);
+      if (end < html.length() - 1) {
+        int character = Character.codePointAt(html, end);
+        if (!Character.isWhitespace(character)) {
+          replacement += " ";
         }
-
-        html = matcher.replaceFirst(replacement.replace("\\)", "\\\\)"));
       }
+
+      html.replace(start, end, replacement);
     }
 
-    converterStorage.setReplacement(wrapped, html);
-    html = replace(html);
-    converterStorage.setReplacement(wrapped, html);
+    escaped = true;
+    return convertContent(html.toString(), childFlags);
+  }
 
-    return html;
+  /**
+   * Checks whether the markdown is unescaped once more after the conversion. This is the case for
+   * the splice of {@link #getReplacedContent()}, which works on escaped HTML. Text a mapper reads
+   * straight from the document is already decoded and must be escaped to survive that.
+   *
+   * @return True if the markdown of this element is unescaped after the conversion
+   */
+  boolean isEscaped() {
+    return escaped;
   }
 
+  /**
+   * Converts the assembled content of this element with its {@link Mapper}.
+   * <p>
+   * The content is stored before the mapper runs, so mappers can access it through the {@link
+   * ConverterStorage}. Afterwards the result is stored.
+   *
+   * @param content The content of this element, with all children already replaced
+   * @param childFlags The combined {@link SubtreeFlags} of all children
+   * @return The converted content
+   */
+  String convertContent(String content, int childFlags) {
+    converterStorage.setSubtreeFlags(id, SubtreeFlags.of(wrapped) | childFlags);
+    converterStorage.setReplacement(id, content);
+    content = replace(content);
+    converterStorage.setReplacement(id, content);
+
+    return content;
+  }
+
+  /**
+   * Checks whether this element or one of its descendants has the given {@link SubtreeFlags}.
+   *
+   * @param flag The flag to check
+   * @return True if the subtree of this element has the flag
+   */
+  boolean subtreeContains(int flag) {
+    int flags = converterStorage.getSubtreeFlags(id);
+    if (flags < 0) {
+      flags = SubtreeFlags.scan(wrapped);
+    }
+    return (flags & flag) != 0;
+  }
+
+  /**
+   * Removes line breaks, and the whitespace after them, in front of tags. Equivalent to {@code
+   * replaceAll("(\n|\r\n|\r)\\s*<", "<")}.
+   *
+   * @param html The HTML to clean up
+   * @return The cleaned HTML
+   */
   private String cleanupHtmlTagLinefeeds(String html) {
-    return html.replaceAll("(\n|\r\n|\r)\\s*<", "<");
+    StringBuilder result = null;
+    // the first line break in the current whitespace run
+    int lineBreak = -1;
+    int copied = 0;
+
+    for (int i = 0; i < html.length(); i++) {
+      char c = html.charAt(i);
+      if (c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r') {
+        if (lineBreak < 0 && (c == '\n' || c == '\r')) {
+          lineBreak = i;
+        }
+        continue;
+      }
+
+      if (c == '<' && lineBreak >= 0) {
+        if (result == null) {
+          result = new StringBuilder(html.length());
+        }
+        result.append(html, copied, lineBreak);
+        copied = i;
+      }
+      lineBreak = -1;
+    }
+
+    if (result == null) {
+      return html;
+    }
+    return result.append(html, copied, html.length()).toString();
   }
 
   private String replace(String content) {
-    Optional<Mapper> mapperOptional = mappers.getMapper(this);
-    if (mapperOptional.isPresent()) {
-      return mapperOptional.get().convert(content, this);
+    ConversionListener listener = mappers.getListener();
+    Mapper mapper;
+    if (listener == null) {
+      mapper = mappers.findMapper(this);
+    } else {
+      long start = System.nanoTime();
+      mapper = mappers.findMapper(this);
+      listener.onPhase(ConversionListener.Phase.DISPATCH, System.nanoTime() - start);
+    }
+
+    if (mapper != null) {
+      if (listener == null) {
+        return mapper.convert(content, this);
+      }
+      long start = System.nanoTime();
+      String result = mapper.convert(content, this);
+      listener.onMapperInvoked(mapper, System.nanoTime() - start, result.length());
+      return result;
     }
     if (silentlyIgnoreUnknownTags) {
       return content;
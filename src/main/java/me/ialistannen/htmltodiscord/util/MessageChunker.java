@@ -0,0 +1,257 @@
+package me.ialistannen.htmltodiscord.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Splits converted markdown into Discord messages that fit a character budget.
+ * <p>
+ * Chunks are split at block boundaries (blank lines and the edges of code fences) whenever
+ * possible. Blocks that are too big are split at line breaks and lines that are too long at
+ * spaces or, as a last resort, anywhere. A code fence that is split is closed at the end of the
+ * chunk and reopened at the start of the next one.
+ * <p>
+ * The chunks are produced lazily in one pass over the markdown.
+ */
+public class MessageChunker implements Iterator<String> {
+
+  /**
+   * The maximum length of a Discord message
+   */
+  public static final int MESSAGE_LIMIT = 2000;
+  /**
+   * The maximum length of the description of a Discord embed
+   */
+  public static final int EMBED_DESCRIPTION_LIMIT = 4096;
+  /**
+   * The smallest budget a chunker accepts
+   */
+  public static final int MINIMUM_BUDGET = 32;
+
+  private static final String FENCE = "```";
+  private static final String FENCE_CLOSE = "\n" + FENCE;
+
+  private String text;
+  private int budget;
+
+  /**
+   * The start of the next line to look at and whether it is inside a code fence
+   */
+  private int position;
+  private boolean inFence;
+  private String fenceOpener;
+
+  /**
+   * Where the current chunk starts and what it must be prefixed with
+   */
+  private int chunkStart;
+  private String chunkPrefix = "";
+
+  /**
+   * The last block boundary in the current chunk. Block boundaries are never inside a fence.
+   */
+  private int blockBoundary = -1;
+
+  private String next;
+
+  /**
+   * @param text The markdown to split
+   * @param budget The maximum length of a chunk
+   * @throws IllegalArgumentException if the budget is smaller than {@link #MINIMUM_BUDGET}
+   */
+  public MessageChunker(String text, int budget) {
+    if (budget < MINIMUM_BUDGET) {
+      throw new IllegalArgumentException(
+          "The budget must be at least " + MINIMUM_BUDGET + " but was " + budget
+      );
+    }
+    this.text = text;
+    this.budget = budget;
+  }
+
+  /**
+   * Splits the markdown into chunks.
+   *
+   * @param text The markdown to split
+   * @param budget The maximum length of a chunk
+   * @return All chunks, in order
+   * @throws IllegalArgumentException if the budget is smaller than {@link #MINIMUM_BUDGET}
+   */
+  public static List<String> chunk(String text, int budget) {
+    List<String> chunks = new ArrayList<>();
+    new MessageChunker(text, budget).forEachRemaining(chunks::add);
+    return chunks;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      next = computeNext();
+    }
+    return next != null;
+  }
+
+  @Override
+  public String next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    String result = next;
+    next = null;
+    return result;
+  }
+
+  /**
+   * Reads lines until a chunk is full.
+   *
+   * @return The next chunk or null if there is none
+   */
+  private String computeNext() {
+    while (chunkStart < text.length()) {
+      if (position >= text.length()) {
+        String chunk = emit(text.length(), inFence);
+        if (chunk != null) {
+          return chunk;
+        }
+        continue;
+      }
+
+      int lineEnd = text.indexOf('\n', position);
+      if (lineEnd < 0) {
+        lineEnd = text.length();
+      }
+      boolean fenceLine = isFence(position, lineEnd);
+      boolean inFenceAfter = fenceLine != inFence;
+
+      int size = chunkPrefix.length() + lineEnd - chunkStart;
+      if (inFenceAfter) {
+        size += FENCE_CLOSE.length();
+      }
+
+      if (size > budget) {
+        String chunk = split(lineEnd);
+        if (chunk != null) {
+          return chunk;
+        }
+        continue;
+      }
+
+      if (fenceLine && !inFence) {
+        // the line before an opening fence ends a block
+        blockBoundary = position;
+        fenceOpener = text.substring(position, lineEnd).trim();
+      }
+      inFence = inFenceAfter;
+      int nextLine = Math.min(lineEnd + 1, text.length());
+      if (!inFence && (fenceLine || isBlank(position, lineEnd))) {
+        blockBoundary = nextLine;
+      }
+      position = nextLine;
+    }
+    return null;
+  }
+
+  /**
+   * Ends the current chunk, because the line ending at {@code lineEnd} does not fit anymore.
+   *
+   * @param lineEnd The end of the line that does not fit
+   * @return The chunk or null if it was empty
+   */
+  private String split(int lineEnd) {
+    if (blockBoundary > chunkStart) {
+      // the lines between the boundary and the current one just move to the next chunk
+      return emit(blockBoundary, false);
+    }
+    if (position > chunkStart) {
+      return emit(position, inFence);
+    }
+
+    // a single line is too long
+    int available = budget - chunkPrefix.length() - (inFence ? FENCE_CLOSE.length() : 0);
+    int end = Math.min(chunkStart + available, lineEnd);
+    int space = end - 1;
+    while (space > chunkStart && text.charAt(space) != ' ') {
+      space--;
+    }
+    if (space > chunkStart) {
+      end = space + 1;
+    } else if (Character.isHighSurrogate(text.charAt(end - 1))) {
+      end--;
+    }
+    return emit(end, inFence);
+  }
+
+  /**
+   * Emits the chunk ending at the given position and starts the next one there.
+   *
+   * @param end The end of the chunk
+   * @param fenceOpen Whether a code fence is open at the end
+   * @return The chunk or null if it contained only whitespace
+   */
+  private String emit(int end, boolean fenceOpen) {
+    int contentStart = chunkStart;
+    if (chunkPrefix.isEmpty()) {
+      while (contentStart < end && Character.isWhitespace(text.charAt(contentStart))) {
+        contentStart++;
+      }
+    }
+    int contentEnd = end;
+    while (contentEnd > contentStart && Character.isWhitespace(text.charAt(contentEnd - 1))) {
+      contentEnd--;
+    }
+
+    String chunk = null;
+    if (contentEnd > contentStart) {
+      StringBuilder builder = new StringBuilder(budget);
+      builder.append(chunkPrefix).append(text, contentStart, contentEnd);
+      if (fenceOpen && end < text.length()) {
+        builder.append(FENCE_CLOSE);
+      }
+      chunk = builder.toString();
+    }
+
+    chunkStart = end;
+    chunkPrefix = fenceOpen ? reopenedFence() + "\n" : "";
+    blockBoundary = -1;
+
+    return chunk;
+  }
+
+  /**
+   * @return The line that reopens the current fence in the next chunk
+   */
+  private String reopenedFence() {
+    if (fenceOpener == null || fenceOpener.length() > budget / 4) {
+      return FENCE;
+    }
+    return fenceOpener;
+  }
+
+  /**
+   * @param start The start of the line
+   * @param end The end of the line
+   * @return True if the line opens or closes a code fence
+   */
+  private boolean isFence(int start, int end) {
+    while (start < end && text.charAt(start) == ' ') {
+      start++;
+    }
+    return text.startsWith(FENCE, start);
+  }
+
+  /**
+   * @param start The start of the line
+   * @param end The end of the line
+   * @return True if the line contains only whitespace
+   */
+  private boolean isBlank(int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (!Character.isWhitespace(text.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -1,7 +1,5 @@
 package me.ialistannen.htmltodiscord.util;
 
-import org.jsoup.parser.Parser;
-
 /**
  * A class dealing with Strings
  */
@@ -34,8 +32,6 @@ public class StringUtils {
   public static String padToLength(String string, char paddingChar, int length) {
     String result = string.trim();
 
-    result = Parser.unescapeEntities(result, false);
-
     if (result.length() >= length) {
       return result;
     }
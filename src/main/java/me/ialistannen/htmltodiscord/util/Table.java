@@ -1,21 +1,26 @@
 package me.ialistannen.htmltodiscord.util;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
-import java.util.Queue;
 
 /**
  * A table
+ * <p>
+ * The widths of the columns are measured when the table is built, and the text of the columns is
+ * dropped again. The text of a row is computed again when it is printed, so only the columns of
+ * the row that is printed are kept in memory.
  */
 public class Table {
 
-  private List<SlicedLine> slicedLines;
+  private static final String FENCE = "```";
+
+  private List<TableCreator.Line> lines;
   private TableCreator.ColumnSeparator columnSeparator;
   private int maxWidth;
+  private int[] columnWidths;
 
   /**
    * @param creator The {@link TableCreator} to use
@@ -23,12 +28,9 @@ public class Table {
   Table(TableCreator creator) {
     maxWidth = creator.getMaxWidth();
     columnSeparator = creator.getColumnSeparator();
+    lines = creator.getLines();
 
-    List<TableCreator.Line> lines = new ArrayList<>(creator.getLines());
-
-    fillLinesWithEmptyColumns(lines);
-
-    slicedLines = sliceColumns(lines);
+    columnWidths = calculateColumnWidths(measureColumns());
   }
 
   /**
@@ -38,275 +40,423 @@ public class Table {
    */
   public String print() {
     StringBuilder builder = new StringBuilder();
-
-    for (SlicedLine slicedLine : slicedLines) {
-      String line = slicedLine.print(columnSeparator);
-      builder.append(line).append("\n");
+    try {
+      print(builder);
+    } catch (IOException e) {
+      // a StringBuilder never throws
+      throw new UncheckedIOException(e);
     }
-
     return builder.toString();
   }
 
   /**
-   * Brings all lines on the same amount of columns
+   * Prints this table row by row.
+   *
+   * @param out The {@link Appendable} to print to
+   * @throws IOException if writing fails
    */
-  private void fillLinesWithEmptyColumns(List<TableCreator.Line> lines) {
-    int maxColumns = lines.stream().mapToInt(line -> line.getColumns().size()).max().orElse(-1);
-    if (maxColumns == -1) {
-      throw new IllegalArgumentException("No columns found!");
-    }
-
-    lines.forEach(line -> {
-      if (line.getColumns().size() == maxColumns) {
-        return;
-      }
-
-      int diff = maxColumns - line.getColumns().size();
-
-      for (int i = 0; i < diff; i++) {
-        line.addColumn(() -> "");
-      }
-    });
+  public void print(Appendable out) throws IOException {
+    printRows(out, 0, lines.size(), false);
   }
 
   /**
-   * Slices the lines in ones that fir in the width constraints
+   * Prints this table row by row in code fences. Every block starts and ends with a line break.
    *
-   * @param lines The lines to slice
-   * @return The sliced lines
+   * @param out The {@link Appendable} to print to
+   * @param rowsPerBlock The amount of rows after which a new fenced block is started, so every
+   * block fits in a message. Zero or less to print a single block.
+   * @throws IOException if writing fails
    */
-  private List<SlicedLine> sliceColumns(List<TableCreator.Line> lines) {
-    List<Integer> columnWidths = calculateColumnWidths(lines);
-    List<SlicedLine> slicedLines = new ArrayList<>(lines.size());
+  public void printFenced(Appendable out, int rowsPerBlock) throws IOException {
+    printFenced(out, rowsPerBlock, false);
+  }
 
-    for (TableCreator.Line line : lines) {
-      List<SlicedColumn> slicedColumns = new ArrayList<>();
+  /**
+   * Prints this table row by row in code fences. Every block starts and ends with a line break.
+   *
+   * @param out The {@link Appendable} to print to
+   * @param rowsPerBlock The amount of rows after which a new fenced block is started, so every
+   * block fits in a message. Zero or less to print a single block.
+   * @param escapeAmpersands Whether every {@code &} in a row is printed as {@code &amp;}, so the
+   * table is not changed when HTML entities are unescaped afterwards
+   * @throws IOException if writing fails
+   */
+  public void printFenced(Appendable out, int rowsPerBlock, boolean escapeAmpersands)
+      throws IOException {
+    int blockSize = rowsPerBlock <= 0 ? Math.max(lines.size(), 1) : rowsPerBlock;
+    int start = 0;
+    do {
+      int end = Math.min(start + blockSize, lines.size());
+      out.append('\n').append(FENCE).append('\n');
+      printRows(out, start, end, escapeAmpersands);
+      out.append('\n').append(FENCE).append('\n');
+      start = end;
+    } while (start < lines.size());
+  }
 
-      List<TableCreator.Column> columns = line.getColumns();
-      for (int i = 0; i < columns.size(); i++) {
-        TableCreator.Column column = columns.get(i);
-        SlicedColumn sliced = new SlicedColumn(column, columnWidths.get(i));
-        slicedColumns.add(sliced);
+  /**
+   * Slices and prints the given rows, each followed by a line break.
+   *
+   * @param out The {@link Appendable} to print to
+   * @param start The first row to print
+   * @param end The row after the last one to print
+   * @param escapeAmpersands Whether every {@code &} is printed as {@code &amp;}
+   * @throws IOException if writing fails
+   */
+  private void printRows(Appendable out, int start, int end, boolean escapeAmpersands)
+      throws IOException {
+    StringBuilder row = new StringBuilder();
+    SlicedColumn[] columns = new SlicedColumn[columnWidths.length];
+
+    for (int line = start; line < end; line++) {
+      List<TableCreator.Column> lineColumns = lines.get(line).getColumns();
+      for (int i = 0; i < columns.length; i++) {
+        String text = i < lineColumns.size() ? lineColumns.get(i).getColumn() : "";
+        columns[i] = new SlicedColumn(text, columnWidths[i]);
       }
 
-      slicedLines.add(new SlicedLine(slicedColumns, line.getRowSeparator()));
+      printRow(row, columns, lines.get(line).getRowSeparator());
+      row.append("\n");
+      if (escapeAmpersands) {
+        appendEscaped(out, row);
+      } else {
+        out.append(row);
+      }
+      row.setLength(0);
     }
-
-    return slicedLines;
   }
 
   /**
-   * @return The calculated column sizes
+   * Appends the text with every {@code &} replaced by {@code &amp;}.
+   *
+   * @param out The {@link Appendable} to append to
+   * @param text The text to append
+   * @throws IOException if writing fails
    */
-  private List<Integer> calculateColumnWidths(List<TableCreator.Line> lines) {
-    List<Integer> columnWidths = new ArrayList<>();
-    int averageWidth = maxWidth;
-    averageWidth -=
-        (lines.get(0).getColumns().size() + 1) * columnSeparator.getSeparator().length();
-    averageWidth /= lines.get(0).getColumns().size();
-
-    for (TableCreator.Line line : lines) {
-      List<TableCreator.Column> lineColumns = line.getColumns();
-      for (int i = 0; i < lineColumns.size(); i++) {
-        // + 2 because it seemed to work. Too lazy to figure out why it is needed.
-        int width = lineColumns.get(i).getColumn().length() + 2;
-
-        if (columnWidths.size() - 1 < i) {
-          columnWidths.add(-1);
-        }
-
-        if (averageWidth <= 0) {
-          if (columnWidths.get(i) < width) {
-            columnWidths.set(i, width);
-          }
-        } else {
-          if (width < averageWidth) {
-            if (columnWidths.get(i) <= width) {
-              columnWidths.set(i, width);
-            }
-          } else {
-            columnWidths.set(i, averageWidth);
-          }
-        }
+  private static void appendEscaped(Appendable out, CharSequence text) throws IOException {
+    int copied = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '&') {
+        out.append(text, copied, i).append("&amp;");
+        copied = i + 1;
       }
     }
+    out.append(text, copied, text.length());
+  }
 
-    int pool = maxWidth - columnWidths.stream().mapToInt(Integer::intValue).sum();
-    pool -= (columnWidths.size() + 1) * columnSeparator.getSeparator().length();
-
-    List<Integer> maxWidths = getMaxWidth(lines);
-
-    if (pool > 0) {
-      for (int i = 0; i < columnWidths.size(); i++) {
-        int columnWidth = columnWidths.get(i);
-
-        if (columnWidth < maxWidths.get(i)) {
-          if (pool <= 0) {
-            continue;
-          }
-          int newWidth = Math.min(columnWidth + pool, maxWidths.get(i));
-          pool -= newWidth - columnWidth;
+  /**
+   * Prints a row with the separator
+   *
+   * @param builder The builder to print to
+   * @param columns The sliced columns of the row
+   * @param rowSeparator The {@link TableCreator.RowSeparator} of the row
+   */
+  private void printRow(StringBuilder builder, SlicedColumn[] columns,
+      TableCreator.RowSeparator rowSeparator) {
+    String separator = columnSeparator.getSeparator();
+
+    int maxLines = 0;
+    int length = 0;
+    for (SlicedColumn column : columns) {
+      maxLines = Math.max(maxLines, column.getLineCount());
+      length += column.getLength();
+    }
+    length += (columns.length + 1) * separator.length();
 
-          columnWidths.set(i, newWidth);
-        } else {
-          pool += maxWidths.get(i) - columnWidth;
-        }
+    for (int i = 0; i < maxLines; i++) {
+      builder.append(separator);
+      for (SlicedColumn column : columns) {
+        column.printLine(builder, i);
+        builder.append(separator);
       }
+      builder.append("\n");
     }
 
-    return columnWidths;
+    String rowSeparatorText = rowSeparator.getSeparator(length);
+    if (rowSeparatorText.isEmpty()) {
+      builder.deleteCharAt(builder.length() - 1);
+    } else {
+      builder.append(rowSeparatorText);
+    }
   }
 
-  private List<Integer> getMaxWidth(List<TableCreator.Line> lines) {
-    List<Integer> width = new ArrayList<>();
+  /**
+   * Computes and measures the text of every column. The text is not kept.
+   *
+   * @return The width of the widest cell of every column
+   */
+  private int[] measureColumns() {
+    int maxColumns = -1;
+    for (TableCreator.Line line : lines) {
+      maxColumns = Math.max(maxColumns, line.getColumns().size());
+    }
+    if (maxColumns == -1) {
+      throw new IllegalArgumentException("No columns found!");
+    }
 
+    int[] maxWidths = new int[maxColumns];
     for (TableCreator.Line line : lines) {
       List<TableCreator.Column> columns = line.getColumns();
       for (int i = 0; i < columns.size(); i++) {
-        TableCreator.Column column = columns.get(i);
-
-        int columnWidth = column.getColumn().length();
-
-        if (width.size() - 1 < i) {
-          width.add(columnWidth);
-        } else if (width.get(i) < columnWidth) {
-          width.set(i, columnWidth);
-        }
+        maxWidths[i] = Math.max(maxWidths[i], columns.get(i).getColumn().length());
       }
     }
-
-    return width;
+    return maxWidths;
   }
 
   /**
-   * A sliced line
+   * Computes the width of every column from the measured columns.
+   * <p>
+   * Every column gets the width of its widest cell plus two, but at most an equal share of the
+   * max width. Whatever is left of the max width is then handed out from left to right to the
+   * columns that are narrower than their widest cell.
+   * <p>
+   * The two extra characters leave one space of padding on each side of the widest cell. They are
+   * also needed for the widest cell to fit on a single line: the wrapping counts a space after
+   * every word and only accepts a word if the line stays strictly shorter than the column.
+   *
+   * @param maxWidths The width of the widest cell of every column
+   * @return The width of every column
    */
-  private static class SlicedLine {
-
-    private List<SlicedColumn> columns;
-    private TableCreator.RowSeparator rowSeparator;
+  private int[] calculateColumnWidths(int[] maxWidths) {
+    int columnCount = maxWidths.length;
+
+    int available = maxWidth - (columnCount + 1) * columnSeparator.getSeparator().length();
+    int averageWidth = available / columnCount;
+
+    int[] columnWidths = new int[columnCount];
+    int pool = available;
+    for (int i = 0; i < columnCount; i++) {
+      int width = maxWidths[i] + 2;
+      columnWidths[i] = averageWidth <= 0 ? width : Math.min(width, averageWidth);
+      pool -= columnWidths[i];
+    }
 
-    /**
-     * @param columns The columns
-     * @param rowSeparator The row separator
-     */
-    private SlicedLine(List<SlicedColumn> columns, TableCreator.RowSeparator rowSeparator) {
-      this.columns = columns;
-      this.rowSeparator = rowSeparator;
+    if (pool <= 0) {
+      return columnWidths;
     }
+    for (int i = 0; i < columnCount; i++) {
+      int columnWidth = columnWidths[i];
 
-    /**
-     * @param columnSeparator The {@link TableCreator.ColumnSeparator}
-     * @return The row with the separator
-     */
-    private String print(TableCreator.ColumnSeparator columnSeparator) {
-      StringBuilder builder = new StringBuilder();
-      int maxLines = columns.stream().mapToInt(column -> column.getLines().size()).max().orElse(0);
-
-      for (int i = 0; i < maxLines; i++) {
-        builder.append(columnSeparator.getSeparator());
-        for (SlicedColumn column : columns) {
-          if (column.getLines().size() - 1 < i) {
-            builder.append(
-                me.ialistannen.htmltodiscord.util.StringUtils.repeat(" ", column.getLength()));
-          } else {
-            String line = column.getLines().get(i);
-            builder.append(me.ialistannen.htmltodiscord.util.StringUtils
-                .padToLength(line, ' ', column.getLength()));
-          }
-          builder.append(columnSeparator.getSeparator());
+      if (columnWidth < maxWidths[i]) {
+        if (pool <= 0) {
+          continue;
         }
-        builder.append("\n");
-      }
+        int newWidth = Math.min(columnWidth + pool, maxWidths[i]);
+        pool -= newWidth - columnWidth;
 
-      int length = columns.stream().mapToInt(SlicedColumn::getLength).sum();
-      length += (columns.size() + 1) * columnSeparator.getSeparator().length();
-      if (rowSeparator.getSeparator(length).isEmpty()) {
-        builder.deleteCharAt(builder.length() - 1);
+        columnWidths[i] = newWidth;
       } else {
-        builder.append(rowSeparator.getSeparator(length));
+        // the padding of a column that already fits its widest cell is taken from the pool
+        pool += maxWidths[i] - columnWidth;
       }
-
-      return builder.toString();
     }
+
+    return columnWidths;
   }
 
   /**
    * A column that was sliced into it's place
+   * <p>
+   * The lines are stored as ranges of the text, so wrapping does not create any strings. A line
+   * that is too long is cut and ends with an ellipsis.
    */
   private static class SlicedColumn {
 
-    private List<String> lines;
+    private static final String ELLIPSIS = "...";
+
+    /**
+     * The start, end and flags of every line
+     */
+    private static final int LINE_STRIDE = 3;
+    private static final int FLAG_ELLIPSIS = 1;
+
+    private String text;
     private int length;
+    private boolean linefeedsAsSpaces;
+
+    private int[] lines = new int[LINE_STRIDE * 2];
+    private int lineCount;
 
     /**
-     * @param column The column to use
+     * @param text The text of the column
      * @param length The max length of a line
      */
-    private SlicedColumn(TableCreator.Column column, int length) {
+    private SlicedColumn(String text, int length) {
+      this.text = text;
       this.length = length;
 
-      lines = new ArrayList<>(trimToLength(column.getColumn(), length));
+      trimToLength(length);
     }
 
     /**
-     * Trims the text to a given length
+     * Wraps the text at spaces and line breaks, so no line is longer than the given length.
+     * <p>
+     * A word that does not fit in a line on its own is cut. Text without any spaces is never
+     * wrapped, only cut.
      *
-     * @param text The text to trim
-     * @param maxLength The max length of the lore
-     * @return The trimmed text
+     * @param maxLength The max length of a line
      */
-    private List<String> trimToLength(String text, int maxLength) {
+    private void trimToLength(int maxLength) {
       Objects.requireNonNull(text, "text can not be null!");
 
       if (maxLength < 1) {
         throw new IllegalArgumentException("MaxLength must be > 0");
       }
 
-      if (!text.contains(" ")) {
-        return Collections.singletonList(trimToLengthWithEllipsis(text, maxLength));
+      if (text.indexOf(' ') < 0) {
+        addLineWithEllipsis(0, text.length(), maxLength);
+        return;
       }
+      linefeedsAsSpaces = true;
 
-      List<String> newLore = new LinkedList<>();
-      Queue<String> parts = new LinkedList<>(
-          Arrays.asList(text.trim().replace("\n", "!!--!! ").split(" ")));
-      String result = "";
-      for (String tmp : parts) {
-        String withoutLineBreak = tmp.replace("!!--!!", "");
-        if (result.length() + withoutLineBreak.length() < maxLength) {
-          result += withoutLineBreak + " ";
-          if (tmp.contains("!!--!!") && !tmp.startsWith("!!--!!")) {
-            newLore.add(result);
-            result = "";
+      int start = 0;
+      int end = text.length();
+      while (start < end && text.charAt(start) <= ' ') {
+        start++;
+      }
+      while (end > start && text.charAt(end - 1) <= ' ') {
+        end--;
+      }
+
+      // the current line is text[lineStart, lineEnd), followed by a space if it is not cut
+      int lineStart = start;
+      int lineEnd = start;
+      int lineLength = 0;
+      boolean cut = false;
+
+      int wordStart = start;
+      while (true) {
+        int wordEnd = wordStart;
+        while (wordEnd < end && text.charAt(wordEnd) != ' ' && text.charAt(wordEnd) != '\n') {
+          wordEnd++;
+        }
+        int wordLength = wordEnd - wordStart;
+        // a line break directly after a space does not end the line
+        boolean lineBreak = wordEnd < end && text.charAt(wordEnd) == '\n' && wordLength > 0;
+
+        if (lineLength + wordLength < maxLength) {
+          if (lineLength == 0) {
+            lineStart = wordStart;
           }
+          lineEnd = wordEnd;
+          lineLength += wordLength + 1;
         } else {
-          result = trimToLengthWithEllipsis(result, maxLength);
-
-          newLore.add(result);
-          result = withoutLineBreak + " ";
+          addLine(lineStart, lineEnd, cut);
+
+          lineStart = wordStart;
+          lineEnd = wordEnd;
+          lineLength = wordLength + 1;
+          cut = false;
+          if (lineLength > maxLength) {
+            lineLength = maxLength;
+            if (maxLength < 4) {
+              lineEnd = wordStart + maxLength;
+            } else {
+              lineEnd = wordStart + maxLength - ELLIPSIS.length();
+              cut = true;
+            }
+          }
+        }
 
-          result = trimToLengthWithEllipsis(result, maxLength);
+        if (lineBreak) {
+          addLine(lineStart, lineEnd, cut);
+          lineLength = 0;
+          lineStart = lineEnd = wordEnd + 1;
+          cut = false;
+        }
 
-          if (tmp.contains("!!--!!") && !tmp.startsWith("!!--!!")) {
-            newLore.add(result);
-            result = "";
-          }
+        if (wordEnd >= end) {
+          break;
         }
+        wordStart = wordEnd + 1;
       }
-      newLore.add(result.substring(0, Math.min(maxLength, result.length())));
 
-      return newLore;
+      addLine(lineStart, lineEnd, cut);
     }
 
-    private String trimToLengthWithEllipsis(String string, int maxLength) {
-      if (maxLength < 4) {
-        return string.substring(0, Math.min(string.length(), maxLength));
+    /**
+     * Adds a line, cutting it if it is longer than the max length.
+     *
+     * @param start The start of the line in the text
+     * @param end The end of the line in the text
+     * @param maxLength The max length of a line
+     */
+    private void addLineWithEllipsis(int start, int end, int maxLength) {
+      if (end - start <= maxLength) {
+        addLine(start, end, false);
+      } else if (maxLength < 4) {
+        addLine(start, start + maxLength, false);
+      } else {
+        addLine(start, start + maxLength - ELLIPSIS.length(), true);
+      }
+    }
+
+    /**
+     * @param start The start of the line in the text
+     * @param end The end of the line in the text
+     * @param ellipsis Whether the line was cut and ends with an ellipsis
+     */
+    private void addLine(int start, int end, boolean ellipsis) {
+      int offset = lineCount * LINE_STRIDE;
+      if (offset + LINE_STRIDE > lines.length) {
+        lines = Arrays.copyOf(lines, lines.length * 2);
+      }
+      lines[offset] = start;
+      lines[offset + 1] = end;
+      lines[offset + 2] = ellipsis ? FLAG_ELLIPSIS : 0;
+      lineCount++;
+    }
+
+    /**
+     * Prints a line, trimmed and centered in the column. Prints only spaces if the column has no
+     * such line.
+     *
+     * @param builder The builder to print to
+     * @param line The index of the line
+     */
+    private void printLine(StringBuilder builder, int line) {
+      if (line >= lineCount) {
+        appendPadding(builder, length);
+        return;
+      }
+
+      int offset = line * LINE_STRIDE;
+      int start = lines[offset];
+      int end = lines[offset + 1];
+      boolean ellipsis = (lines[offset + 2] & FLAG_ELLIPSIS) != 0;
+
+      while (start < end && text.charAt(start) <= ' ') {
+        start++;
       }
-      if (string.length() <= maxLength) {
-        return string;
+      if (!ellipsis) {
+        while (end > start && text.charAt(end - 1) <= ' ') {
+          end--;
+        }
       }
 
-      return string.substring(0, maxLength - 3) + "...";
+      int lineLength = end - start + (ellipsis ? ELLIPSIS.length() : 0);
+      int difference = Math.max(0, length - lineLength);
+
+      appendPadding(builder, difference / 2);
+      for (int i = start; i < end; i++) {
+        char c = text.charAt(i);
+        builder.append(c == '\n' && linefeedsAsSpaces ? ' ' : c);
+      }
+      if (ellipsis) {
+        builder.append(ELLIPSIS);
+      }
+      appendPadding(builder, difference - difference / 2);
+    }
+
+    /**
+     * @param builder The builder to append to
+     * @param amount The amount of spaces to append
+     */
+    private static void appendPadding(StringBuilder builder, int amount) {
+      for (int i = 0; i < amount; i++) {
+        builder.append(' ');
+      }
     }
 
     /**
@@ -317,10 +467,10 @@ public class Table {
     }
 
     /**
-     * @return The lines
+     * @return The amount of lines
      */
-    private List<String> getLines() {
-      return lines;
+    private int getLineCount() {
+      return lineCount;
     }
   }
 }
@@ -117,13 +117,6 @@ public class TableCreator {
     RowSeparator getRowSeparator() {
       return rowSeparator;
     }
-
-    /**
-     * @param column The column to add
-     */
-    void addColumn(Column column) {
-      columns.add(column);
-    }
   }
 
   /**
@@ -0,0 +1,66 @@
+package me.ialistannen.htmltodiscord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConversionEngineTest {
+
+  private static final String TABLE = "<table>"
+      + "<tr><td>a &amp;lt;T&amp;gt; b</td><td>x</td></tr>"
+      + "<tr><td>abcdefghi</td><td>y &amp; z</td></tr>"
+      + "</table>";
+
+  @Test
+  public void tableWithEntityLikeTextIsTheSameInBothEngines() {
+    String splice = convert(TABLE, ConversionEngine.REGEX_SPLICE);
+    String walk = convert(TABLE, ConversionEngine.TREE_WALK);
+
+    assertEquals(walk, splice);
+  }
+
+  @Test
+  public void tableWithEntityLikeTextIsAligned() {
+    for (ConversionEngine engine : ConversionEngine.values()) {
+      String markdown = convert(TABLE, engine);
+
+      int width = -1;
+      for (String line : markdown.split("\n")) {
+        if (line.isEmpty() || line.equals("```")) {
+          continue;
+        }
+        if (width < 0) {
+          width = line.length();
+        }
+        assertEquals(engine + ": " + line, width, line.length());
+      }
+      assertTrue(engine.name(), markdown.contains(" a &lt;T&gt; b "));
+    }
+  }
+
+  @Test
+  public void documentsAreTheSameInBothEngines() {
+    String[] documents = {
+        "<p>Hello <b>bold</b> and <i>italic</i> &amp; <code>code</code></p>",
+        "<h1>Title</h1><ul><li>one</li><li>two <a href=\"/x\">link</a></li></ul>",
+        "<ol><li>first<ol><li>nested</li></ol></li><li>second</li></ol>",
+        "<pre>a &lt; b\n  indented</pre><p>after<br>the break</p>",
+        "<dl><dt>term</dt><dd>definition</dd></dl><blockquote>quoted</blockquote>",
+        "<p>&lt;not a tag&gt; &amp;amp; &quot;quotes&quot;</p>" + TABLE
+    };
+    for (String document : documents) {
+      assertEquals(
+          document,
+          convert(document, ConversionEngine.TREE_WALK),
+          convert(document, ConversionEngine.REGEX_SPLICE)
+      );
+    }
+  }
+
+  private static String convert(String html, ConversionEngine engine) {
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMappers(StandardMappers.values());
+    return new HtmlConverter(html, mappers).setEngine(engine).parse("");
+  }
+}
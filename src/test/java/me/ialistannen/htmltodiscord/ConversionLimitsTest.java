@@ -0,0 +1,69 @@
+package me.ialistannen.htmltodiscord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class ConversionLimitsTest {
+
+  private static final String FLAT = "<p>one</p><p>two</p><p>three</p><p>four</p><p>five</p>";
+  private static final String DEEP = "<div><div><div><div><div><p>deep</p>"
+      + "</div></div></div></div></div>";
+
+  @Test
+  public void tooManyElementsAreRejected() {
+    ConversionLimits limits = new ConversionLimits(4, 100);
+    for (ConversionEngine engine : ConversionEngine.values()) {
+      assertLimit(ConversionLimitException.Limit.ELEMENTS, 4, () -> convert(FLAT, engine, limits));
+    }
+    assertLimit(ConversionLimitException.Limit.ELEMENTS, 4, () -> convertShared(FLAT, limits));
+  }
+
+  @Test
+  public void tooDeepNestingIsRejected() {
+    ConversionLimits limits = new ConversionLimits(1000, 4);
+    for (ConversionEngine engine : ConversionEngine.values()) {
+      assertLimit(ConversionLimitException.Limit.DEPTH, 4, () -> convert(DEEP, engine, limits));
+    }
+    assertLimit(ConversionLimitException.Limit.DEPTH, 4, () -> convertShared(DEEP, limits));
+  }
+
+  @Test
+  public void documentWithinTheLimitsIsConverted() {
+    ConversionLimits limits = new ConversionLimits(100, 100);
+    for (ConversionEngine engine : ConversionEngine.values()) {
+      assertEquals(convert(DEEP, engine, ConversionLimits.NONE), convert(DEEP, engine, limits));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonPositiveLimitIsRejected() {
+    new ConversionLimits(0, 10);
+  }
+
+  private static void assertLimit(ConversionLimitException.Limit limit, int maximum,
+      Runnable conversion) {
+    try {
+      conversion.run();
+      fail("Expected the " + limit + " limit to be exceeded");
+    } catch (ConversionLimitException e) {
+      assertEquals(limit, e.getLimit());
+      assertEquals(maximum, e.getMaximum());
+    }
+  }
+
+  private static String convert(String html, ConversionEngine engine, ConversionLimits limits) {
+    return new HtmlConverter(html, mappers()).setEngine(engine).setLimits(limits).parse("");
+  }
+
+  private static String convertShared(String html, ConversionLimits limits) {
+    return new SharedHtmlConverter(mappers(), false, null, limits).convert(html, "");
+  }
+
+  private static MapperCollection mappers() {
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMappers(StandardMappers.values());
+    return mappers.freeze();
+  }
+}
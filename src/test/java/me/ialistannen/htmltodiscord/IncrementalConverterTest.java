@@ -0,0 +1,87 @@
+package me.ialistannen.htmltodiscord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import org.junit.Test;
+
+public class IncrementalConverterTest {
+
+  private static final String FIRST = "<p>one</p><p>two <b>bold</b></p><p>three</p>";
+  private static final String SECOND = "<p>one</p><p>two <i>changed</i></p><p>three</p>";
+
+  @Test
+  public void unchangedBlocksAreReused() {
+    IncrementalConverter converter = new IncrementalConverter(mappers());
+
+    IncrementalConverter.Update first = converter.update(FIRST, "");
+    assertEquals(0, first.getReusedBlockCount());
+    assertEquals(3, first.getConvertedBlockCount());
+
+    IncrementalConverter.Update second = converter.update(SECOND, "");
+    assertEquals(2, second.getReusedBlockCount());
+    assertEquals(1, second.getConvertedBlockCount());
+    assertEquals(convert(SECOND), second.getMarkdown());
+  }
+
+  @Test
+  public void sameDocumentHasNoChanges() {
+    IncrementalConverter converter = new IncrementalConverter(mappers());
+
+    converter.update(FIRST, "");
+    IncrementalConverter.Update again = converter.update(FIRST, "");
+
+    assertFalse(again.hasChanges());
+    assertEquals(3, again.getReusedBlockCount());
+    assertEquals(Collections.emptyList(), again.getChangedChunks());
+  }
+
+  @Test
+  public void changedBlockChangesItsChunk() {
+    IncrementalConverter converter = new IncrementalConverter(mappers());
+
+    converter.update(FIRST, "");
+    IncrementalConverter.Update second = converter.update(SECOND, "");
+
+    assertTrue(second.hasChanges());
+    assertEquals(Collections.singletonList(0), second.getChangedChunks());
+  }
+
+  @Test
+  public void resetInvalidatesAllBlocks() {
+    IncrementalConverter converter = new IncrementalConverter(mappers());
+
+    converter.update(FIRST, "");
+    converter.reset();
+    IncrementalConverter.Update update = converter.update(FIRST, "");
+
+    assertEquals(0, update.getReusedBlockCount());
+    assertEquals(3, update.getConvertedBlockCount());
+    assertTrue(update.hasChanges());
+  }
+
+  @Test
+  public void removedBlocksAreForgotten() {
+    IncrementalConverter converter = new IncrementalConverter(mappers());
+
+    converter.update(FIRST, "");
+    converter.update("<p>one</p>", "");
+    IncrementalConverter.Update update = converter.update(FIRST, "");
+
+    assertEquals(1, update.getReusedBlockCount());
+    assertEquals(2, update.getConvertedBlockCount());
+    assertEquals(convert(FIRST), update.getMarkdown());
+  }
+
+  private static String convert(String html) {
+    return new SharedHtmlConverter(mappers()).convert(html, "");
+  }
+
+  private static MapperCollection mappers() {
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMappers(StandardMappers.values());
+    return mappers.freeze();
+  }
+}
@@ -0,0 +1,84 @@
+package me.ialistannen.htmltodiscord;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class MapperCollectionTest {
+
+  private static final String NAMED_LINK = "<p><a name=\"n\" href=\"http://x.org/\">text</a></p>";
+
+  @Test
+  public void linkWinsOverNamedAnchorInStandardOrder() {
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMappers(StandardMappers.values());
+
+    for (ConversionEngine engine : ConversionEngine.values()) {
+      assertEquals(engine.name(), "\n[text](http://x.org/)", convert(NAMED_LINK, mappers, engine));
+    }
+  }
+
+  @Test
+  public void readdedNamedAnchorWinsOverLink() {
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMappers(StandardMappers.values());
+    mappers.addMapper(StandardMappers.A_NAME);
+
+    for (ConversionEngine engine : ConversionEngine.values()) {
+      assertEquals(engine.name(), "\ntext", convert(NAMED_LINK, mappers, engine));
+    }
+  }
+
+  @Test
+  public void untaggedMapperAddedLaterWins() {
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMappers(StandardMappers.values());
+    mappers.addMapper(new UntaggedBoldMapper());
+
+    assertEquals("\n<<bold>>", convert("<p><b>bold</b></p>", mappers, ConversionEngine.TREE_WALK));
+  }
+
+  @Test
+  public void untaggedMapperAddedEarlierLoses() {
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMapper(new UntaggedBoldMapper());
+    mappers.addMappers(StandardMappers.values());
+
+    assertEquals("\n**bold**", convert("<p><b>bold</b></p>", mappers, ConversionEngine.TREE_WALK));
+  }
+
+  @Test
+  public void frozenCollectionKeepsPriority() {
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMappers(StandardMappers.values());
+    mappers.addMapper(new UntaggedBoldMapper());
+    mappers.freeze();
+
+    assertEquals("\n<<bold>>", convert("<p><b>bold</b></p>", mappers, ConversionEngine.TREE_WALK));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void frozenCollectionRejectsMappers() {
+    new MapperCollection().freeze().addMapper(StandardMappers.BOLD);
+  }
+
+  private static String convert(String html, MapperCollection mappers, ConversionEngine engine) {
+    return new HtmlConverter(html, mappers).setEngine(engine).parse("");
+  }
+
+  /**
+   * Matches bold tags without declaring any tags
+   */
+  private static class UntaggedBoldMapper implements Mapper {
+
+    @Override
+    public String convert(String input) {
+      return "<<" + input + ">>";
+    }
+
+    @Override
+    public boolean matches(String htmlTag) {
+      return htmlTag.equalsIgnoreCase("b");
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package me.ialistannen.htmltodiscord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import me.ialistannen.htmltodiscord.util.MessageChunker;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PersistentConversionStoreTest {
+
+  private static final String DOCUMENT = "<h1>Title</h1><p>Some <b>text</b> &amp; more</p>";
+  private static final String OTHER = "<p>Another document</p>";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path file;
+  private SharedHtmlConverter converter;
+
+  @Before
+  public void setUp() throws IOException {
+    file = folder.getRoot().toPath().resolve("store.bin");
+
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMappers(StandardMappers.values());
+    converter = new SharedHtmlConverter(mappers.freeze());
+  }
+
+  @Test
+  public void entriesSurviveReopening() throws IOException {
+    PersistentConversionStore.Entry stored;
+    try (PersistentConversionStore store = new PersistentConversionStore(file)) {
+      stored = store.convert(converter, DOCUMENT, "", MessageChunker.MESSAGE_LIMIT);
+    }
+
+    try (PersistentConversionStore store = new PersistentConversionStore(file)) {
+      PersistentConversionStore.Entry entry = store.get(converter, DOCUMENT, "");
+
+      assertNotNull(entry);
+      assertEquals(converter.convert(DOCUMENT, ""), entry.getMarkdown());
+      assertEquals(stored.getChunks(), entry.getChunks());
+      assertEquals(MessageChunker.MESSAGE_LIMIT, entry.getBudget());
+      assertEquals(1, store.size());
+    }
+  }
+
+  @Test
+  public void otherMapperVersionInvalidatesEntries() throws IOException {
+    try (PersistentConversionStore store = new PersistentConversionStore(file, 1)) {
+      store.convert(converter, DOCUMENT, "", MessageChunker.MESSAGE_LIMIT);
+    }
+
+    try (PersistentConversionStore store = new PersistentConversionStore(file, 2)) {
+      assertNull(store.get(converter, DOCUMENT, ""));
+      assertEquals(0, store.size());
+      assertEquals(1, store.getStaleCount());
+    }
+  }
+
+  @Test
+  public void tornAppendIsDropped() throws IOException {
+    int usedBytes;
+    try (PersistentConversionStore store = new PersistentConversionStore(file)) {
+      store.convert(converter, DOCUMENT, "", MessageChunker.MESSAGE_LIMIT);
+      usedBytes = store.getUsedBytes();
+    }
+    // a newer entry for the same document that was cut off after its chunk count
+    FragmentCache.Fingerprint key = PersistentConversionStore.hash(converter, DOCUMENT, "");
+    ByteBuffer torn = ByteBuffer.allocate(32)
+        .putInt(40)
+        .putLong(key.getHigh())
+        .putLong(key.getLow())
+        .putInt(StandardMappers.VERSION)
+        .putInt(MessageChunker.MESSAGE_LIMIT)
+        .putInt(1000);
+    write(usedBytes - 4, torn);
+
+    try (PersistentConversionStore store = new PersistentConversionStore(file)) {
+      assertEquals(1, store.size());
+      assertEquals(
+          converter.convert(DOCUMENT, ""), store.get(converter, DOCUMENT, "").getMarkdown()
+      );
+
+      store.convert(converter, OTHER, "", MessageChunker.MESSAGE_LIMIT);
+    }
+
+    try (PersistentConversionStore store = new PersistentConversionStore(file)) {
+      assertEquals(2, store.size());
+      assertEquals(converter.convert(OTHER, ""), store.get(converter, OTHER, "").getMarkdown());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void fileIsLockedWhileOpen() throws IOException {
+    try (PersistentConversionStore ignored = new PersistentConversionStore(file)) {
+      new PersistentConversionStore(file).close();
+    }
+  }
+
+  /**
+   * Writes to the store file, like an append that was cut off.
+   *
+   * @param position The position to write at
+   * @param buffer The bytes to write
+   * @throws IOException if writing fails
+   */
+  private void write(int position, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(buffer, position);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package me.ialistannen.htmltodiscord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class SharedHtmlConverterTest {
+
+  private static final String DOCUMENT = "<h1>Title</h1>"
+      + "<p>First <b>paragraph</b> &amp; more</p>"
+      + "<ul><li>one</li><li>two</li></ul>"
+      + "<table><tr><td>a</td><td>b</td></tr></table>"
+      + "<p>Last <a href=\"/page\">paragraph</a></p>";
+
+  @Test
+  public void streamedOutputMatchesParse() throws IOException {
+    MapperCollection mappers = mappers();
+    SharedHtmlConverter converter = new SharedHtmlConverter(mappers);
+
+    StringBuilder streamed = new StringBuilder();
+    converter.convert(DOCUMENT, "http://x.org/", streamed);
+
+    for (ConversionEngine engine : ConversionEngine.values()) {
+      String parsed = new HtmlConverter(DOCUMENT, mappers).setEngine(engine).parse("http://x.org/");
+      assertEquals(engine.name(), parsed, streamed.toString());
+    }
+    assertEquals(converter.convert(DOCUMENT, "http://x.org/"), streamed.toString());
+  }
+
+  @Test
+  public void previewPagesAddUpToTheDocument() {
+    SharedHtmlConverter converter = new SharedHtmlConverter(mappers());
+    int budget = 30;
+
+    StringBuilder pages = new StringBuilder();
+    Preview preview = converter.convertPreview(DOCUMENT, "", budget);
+    int pageCount = 1;
+    pages.append(preview.getMarkdown());
+    while (!preview.isComplete()) {
+      preview = converter.convertPreview(preview, budget);
+      assertFalse(preview.getMarkdown().isEmpty());
+      pages.append(preview.getMarkdown());
+      pageCount++;
+    }
+
+    assertTrue(pageCount > 2);
+    assertEquals(converter.convert(DOCUMENT, ""), pages.toString());
+  }
+
+  @Test
+  public void previewPageFitsTheBudget() {
+    SharedHtmlConverter converter = new SharedHtmlConverter(mappers());
+
+    Preview preview = converter.convertPreview(DOCUMENT, "", 20);
+
+    assertTrue(preview.getMarkdown(), preview.getMarkdown().length() <= 20);
+    assertFalse(preview.isComplete());
+  }
+
+  @Test
+  public void completePreviewHasAnEmptyNextPage() {
+    SharedHtmlConverter converter = new SharedHtmlConverter(mappers());
+
+    Preview preview = converter.convertPreview(DOCUMENT, "", 10_000);
+
+    assertTrue(preview.isComplete());
+    assertEquals("", converter.convertPreview(preview, 10_000).getMarkdown());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void previewCanOnlyBeContinuedOnce() {
+    SharedHtmlConverter converter = new SharedHtmlConverter(mappers());
+
+    Preview preview = converter.convertPreview(DOCUMENT, "", 20);
+    converter.convertPreview(preview, 20);
+    converter.convertPreview(preview, 20);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void unfrozenCollectionIsRejected() {
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMappers(StandardMappers.values());
+    new SharedHtmlConverter(mappers);
+  }
+
+  private static MapperCollection mappers() {
+    MapperCollection mappers = new MapperCollection();
+    mappers.addMappers(StandardMappers.values());
+    return mappers.freeze();
+  }
+}
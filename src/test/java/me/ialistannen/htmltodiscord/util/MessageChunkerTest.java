@@ -0,0 +1,79 @@
+package me.ialistannen.htmltodiscord.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+public class MessageChunkerTest {
+
+  @Test
+  public void shortTextIsASingleChunk() {
+    assertEquals(1, MessageChunker.chunk("Hello **world**", MessageChunker.MESSAGE_LIMIT).size());
+  }
+
+  @Test
+  public void chunksFitTheMessageLimit() {
+    assertChunks(paragraphs(600), MessageChunker.MESSAGE_LIMIT);
+  }
+
+  @Test
+  public void chunksFitTheEmbedLimit() {
+    assertChunks(paragraphs(600), MessageChunker.EMBED_DESCRIPTION_LIMIT);
+  }
+
+  @Test
+  public void splitFenceIsReopened() {
+    StringBuilder code = new StringBuilder("Intro\n\n```java\n");
+    for (int i = 0; i < 400; i++) {
+      code.append("int line").append(i).append(" = ").append(i).append(";\n");
+    }
+    code.append("```\n\nOutro");
+
+    List<String> chunks = assertChunks(code.toString(), MessageChunker.MESSAGE_LIMIT);
+    assertTrue(chunks.size() > 2);
+    for (int i = 1; i < chunks.size() - 1; i++) {
+      assertTrue(chunks.get(i), chunks.get(i).startsWith("```java\n"));
+      assertTrue(chunks.get(i), chunks.get(i).endsWith("\n```"));
+    }
+  }
+
+  @Test
+  public void longWordIsCut() {
+    StringBuilder word = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      word.append('x');
+    }
+    assertChunks(word.toString(), MessageChunker.MESSAGE_LIMIT);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tooSmallBudgetIsRejected() {
+    MessageChunker.chunk("text", MessageChunker.MINIMUM_BUDGET - 1);
+  }
+
+  /**
+   * Checks that every chunk fits the budget and has balanced fences.
+   *
+   * @param text The text to split
+   * @param budget The maximum length of a chunk
+   * @return The chunks
+   */
+  private static List<String> assertChunks(String text, int budget) {
+    List<String> chunks = MessageChunker.chunk(text, budget);
+    for (String chunk : chunks) {
+      assertTrue(chunk.length() + " > " + budget, chunk.length() <= budget);
+      assertEquals(chunk, 0, (chunk.split("```", -1).length - 1) % 2);
+    }
+    return chunks;
+  }
+
+  private static String paragraphs(int count) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      text.append("Paragraph ").append(i).append(" with some words in it.\n\n");
+    }
+    return text.toString();
+  }
+}